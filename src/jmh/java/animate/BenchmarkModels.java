@@ -0,0 +1,68 @@
+package animate;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Stage;
+import de.prob.statespace.StateSpace;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import picocli.CommandLine;
+
+/** The bundled test models and a ProB injector shared by the benchmarks of one fork. */
+final class BenchmarkModels {
+
+  private static Injector injector;
+
+  private BenchmarkModels() {}
+
+  /** The model project {@code name} below {@code src/test/resources/models}. */
+  static Path dir(String name) {
+    return Paths.get(System.getProperty("animate.models", "src/test/resources/models"), name);
+  }
+
+  static synchronized Injector injector() {
+    if (injector == null) {
+      injector = Guice.createInjector(Stage.PRODUCTION, new Config());
+    }
+    return injector;
+  }
+
+  /** A fresh {@link Animate} for model project {@code name} with the command line defaults. */
+  static Animate animate(String name) {
+    Animate animate = injector().getInstance(Animate.class);
+    new CommandLine(animate).parseArgs("--output", "quiet", dir(name).toString());
+    return animate;
+  }
+
+  /** Loads the most refined machine of {@code name} with the command line preferences. */
+  static StateSpace load(Animate animate, String name) throws IOException {
+    Path bumFile = new ModelResolver().resolve(dir(name));
+    return animate.api.eventb_load(bumFile.toString(), animate.buildPrefs());
+  }
+
+  /** Zips the files of project {@code name} into {@code target}. */
+  static Path zip(String name, Path target) throws IOException {
+    Path dir = dir(name);
+    List<Path> files;
+    try (Stream<Path> stream = Files.walk(dir)) {
+      files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    try (OutputStream out = Files.newOutputStream(target);
+        ZipOutputStream zip = new ZipOutputStream(out)) {
+      for (Path file : files) {
+        zip.putNextEntry(new ZipEntry(name + "/" + dir.relativize(file)));
+        Files.copy(file, zip);
+        zip.closeEntry();
+      }
+    }
+    return target;
+  }
+}
@@ -0,0 +1,64 @@
+package animate;
+
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import de.prob.statespace.Transition;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Checking the invariants of a state reached by a short walk. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InvariantBenchmark {
+
+  @Param({"binary-search", "cars-on-bridge", "file-system", "traffic-light"})
+  public String model;
+
+  private StateSpace stateSpace;
+  private InvariantChecker checker;
+  private de.prob.statespace.State state;
+  private Transition last;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    stateSpace = BenchmarkModels.load(BenchmarkModels.animate(model), model);
+    RandomWalk walk = new RandomWalk(stateSpace, 1, null, new WalkStrategy.Uniform());
+    Trace trace = walk.run(new Trace(stateSpace), 20, transition -> last = transition);
+    state = trace.getCurrentState();
+    checker = InvariantChecker.of(stateSpace);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    stateSpace.kill();
+  }
+
+  /** What {@code --invariants} does to report a violation: evaluate every invariant. */
+  @Benchmark
+  public List<String> evaluateAll() {
+    return checker.violated(state);
+  }
+
+  /** What {@code --invariant-mode incremental} does after each step. */
+  @Benchmark
+  public List<String> evaluateIncrementally() {
+    return checker.check(state, last);
+  }
+
+  @Benchmark
+  public boolean isInvariantOk() {
+    return state.isInvariantOk();
+  }
+}
@@ -0,0 +1,36 @@
+package animate;
+
+import de.prob.statespace.StateSpace;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Loading a model into a fresh probcli with the preferences of the command line. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoadBenchmark {
+
+  @Param({"binary-search", "cars-on-bridge", "file-system", "traffic-light"})
+  public String model;
+
+  private Animate animate;
+
+  @Setup
+  public void setUp() {
+    animate = BenchmarkModels.animate(model);
+  }
+
+  @Benchmark
+  public void load() throws IOException {
+    StateSpace stateSpace = BenchmarkModels.load(animate, model);
+    stateSpace.kill();
+  }
+}
@@ -0,0 +1,69 @@
+package animate;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import de.prob.check.tracereplay.ReplayedTrace;
+import de.prob.check.tracereplay.TraceReplay;
+import de.prob.statespace.StateSpace;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Replaying a saved trace of {@value #STEPS} steps. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReplayBenchmark {
+
+  private static final int STEPS = 50;
+
+  @Param({"binary-search", "cars-on-bridge", "file-system", "traffic-light"})
+  public String model;
+
+  private Path workDir;
+  private Path trace;
+  private StateSpace stateSpace;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    workDir = Files.createTempDirectory("animate-jmh-");
+    trace = workDir.resolve(model + ".json");
+    String[] args = {
+      "--steps",
+      Integer.toString(STEPS),
+      "--seed",
+      "1",
+      "--output",
+      "quiet",
+      "--save",
+      trace.toString(),
+      BenchmarkModels.dir(model).toString()
+    };
+    if (Animate.execute(args) != 0 || !Files.exists(trace)) {
+      throw new IllegalStateException("Could not record a trace of " + model);
+    }
+    stateSpace = BenchmarkModels.load(BenchmarkModels.animate(model), model);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    stateSpace.kill();
+    MoreFiles.deleteRecursively(workDir, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @Benchmark
+  public ReplayedTrace replay() {
+    return TraceReplay.replayTraceFile(stateSpace, trace);
+  }
+}
@@ -0,0 +1,70 @@
+package animate;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Selecting the machine to load from a directory and from a zip archive. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResolveBenchmark {
+
+  @Param({"binary-search", "cars-on-bridge", "file-system", "traffic-light"})
+  public String model;
+
+  private Path dir;
+  private Path workDir;
+  private Path zip;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = BenchmarkModels.dir(model);
+    workDir = Files.createTempDirectory("animate-jmh-");
+    zip = BenchmarkModels.zip(model, workDir.resolve(model + ".zip"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    MoreFiles.deleteRecursively(workDir, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @Benchmark
+  public Path resolveDirectory() throws IOException {
+    return new ModelResolver().resolve(dir);
+  }
+
+  @Benchmark
+  public Path resolveZip() throws IOException {
+    ModelResolver resolver = new ModelResolver();
+    try {
+      return resolver.resolve(zip);
+    } finally {
+      resolver.cleanupTempDir();
+    }
+  }
+
+  @Benchmark
+  public Path resolveZipLazily() throws IOException {
+    ModelResolver resolver = new ModelResolver();
+    resolver.lazyUnzip = true;
+    try {
+      return resolver.resolve(zip);
+    } finally {
+      resolver.cleanupTempDir();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package animate;
+
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Walks of up to {@link #STEPS} steps per second through {@link Animate#start}. A walk ends early
+ * on a deadlock or an invariant violation, so the steps per second actually taken are reported as
+ * the secondary {@code steps} metric. ProB keeps the states it has explored, so later iterations
+ * mostly revisit known states, like long walks do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StepBenchmark {
+
+  private static final int STEPS = 100;
+
+  @Param({"binary-search", "cars-on-bridge", "file-system", "traffic-light"})
+  public String model;
+
+  @Param({"uniform", "novelty"})
+  public String strategy;
+
+  /** Steps taken by the walks of one iteration. */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Steps {
+    public long steps;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      steps = 0;
+    }
+  }
+
+  private Animate animate;
+  private StateSpace stateSpace;
+  private long seed;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    animate = BenchmarkModels.animate(model);
+    animate.steps = STEPS;
+    animate.strategy = WalkStrategy.Kind.valueOf(strategy);
+    stateSpace = BenchmarkModels.load(animate, model);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    stateSpace.kill();
+  }
+
+  @Benchmark
+  public Trace walk(Steps counter) {
+    animate.seed = seed++;
+    Trace trace = animate.start(stateSpace);
+    counter.steps += animate.stepsTaken;
+    return trace;
+  }
+}
@@ -14,16 +14,19 @@ import de.prob.check.tracereplay.json.TraceManager;
 import de.prob.check.tracereplay.json.storage.TraceJsonFile;
 import de.prob.json.JsonMetadata;
 import de.prob.json.JsonMetadataBuilder;
-import de.prob.model.eventb.EventBMachine;
 import de.prob.scripting.Api;
 import de.prob.statespace.*;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -35,19 +38,60 @@ import picocli.CommandLine.ScopeType;
     name = "animate",
     sortOptions = false,
     version = "animate @VERSION@",
-    subcommands = {CommandLine.HelpCommand.class, ReplayCommand.class, InfoCommand.class})
+    subcommands = {
+      CommandLine.HelpCommand.class,
+      ReplayCommand.class,
+      InfoCommand.class,
+      ServeCommand.class,
+      BatchCommand.class,
+      ConvertCommand.class,
+      CheckCommand.class,
+      AutotuneCommand.class
+    })
 public class Animate implements Callable<Integer> {
 
-  private static final Injector INJECTOR = Guice.createInjector(Stage.PRODUCTION, new Config());
+  // Created on first use, so that a --connect client never starts Guice
+  private static final class Injection {
+    static final Injector INJECTOR;
 
-  private final Api api;
+    static {
+      long start = System.nanoTime();
+      INJECTOR = Guice.createInjector(Stage.PRODUCTION, new Config());
+      guiceInitNanos = System.nanoTime() - start;
+    }
+  }
+
+  private static volatile long guiceInitNanos;
+
+  // Transitions printed when a soak run ends in an invariant violation
+  private static final int SOAK_RECENT_STEPS = 20;
+
+  final Api api;
   private final TraceManager traceManager;
   final ModelResolver modelResolver = new ModelResolver();
   private String probVersionString;
+  private String loadedMachine;
+  private Path resolvedModel;
+  // Set when running inside 'animate serve'; loaded models are then kept instead of killed
+  private ModelCache modelCache;
+  // The cache entry the loaded model is returned to, while serving
+  private String cacheKey;
+  private Map<String, String> cachePrefs;
+  private String cachedMachine;
+  // The cache entries the instances of a pool are returned to, while serving
+  private String poolKey;
+  private Map<String, String> poolPrefs;
+
+  // Relative paths given as plain strings are resolved against this; the client's directory when
+  // serving a request
+  Path workingDir = Paths.get("");
 
   private static final Logger logger = (Logger) LoggerFactory.getLogger(Animate.class);
 
-  @Parameters(description = "path to model.bum or .zip file", scope = ScopeType.INHERIT)
+  @Parameters(
+      arity = "0..1",
+      description = "path to model.bum or .zip file",
+      scope = ScopeType.INHERIT)
   Path model;
 
   @Option(
@@ -56,6 +100,109 @@ public class Animate implements Callable<Integer> {
       description = "number of random steps (default: ${DEFAULT-VALUE})")
   int steps;
 
+  @Option(
+      names = {"-w", "--walks"},
+      defaultValue = "1",
+      description = "number of independent random walks (default: ${DEFAULT-VALUE})")
+  int walks;
+
+  @Option(
+      names = {"-j", "--jobs"},
+      defaultValue = "1",
+      description = "number of ProB instances to run walks on (default: ${DEFAULT-VALUE})")
+  int jobs;
+
+  @Option(
+      names = "--seed",
+      paramLabel = "<n>",
+      description = "seed for the random walks (default: random)")
+  Long seed;
+
+  @Option(
+      names = "--strategy",
+      defaultValue = "uniform",
+      description =
+          "how random walks pick the next event: ${COMPLETION-CANDIDATES}"
+              + " (default: ${DEFAULT-VALUE})")
+  WalkStrategy.Kind strategy;
+
+  @Option(
+      names = "--stall",
+      paramLabel = "<n>",
+      defaultValue = "0",
+      description =
+          "restart a walk from the initial state after n steps without reaching a state it has"
+              + " not visited before, 0 to never restart (default: ${DEFAULT-VALUE})")
+  int stall;
+
+  @Option(
+      names = "--enabling-stats",
+      description =
+          "record the events enabled in each state of a single walk and report how often each was"
+              + " enabled, events never enabled and states with a single enabled event")
+  boolean enablingStats;
+
+  @Option(
+      names = "--until-coverage",
+      description =
+          "keep running walks of --steps steps on --jobs instances until every operation is"
+              + " covered (default: ${DEFAULT-VALUE})")
+  boolean untilCoverage;
+
+  @Option(
+      names = "--max-steps",
+      paramLabel = "<n>",
+      defaultValue = "0",
+      description =
+          "with --until-coverage, total step budget, 0 for none (default: ${DEFAULT-VALUE})")
+  long maxSteps;
+
+  @Option(
+      names = "--max-time",
+      paramLabel = "<seconds>",
+      defaultValue = "0",
+      description = "with --until-coverage, time budget, 0 for none (default: ${DEFAULT-VALUE})")
+  long maxTime;
+
+  @Option(
+      names = "--watch",
+      description =
+          "keep running: reload the model whenever one of its files changes, replay the trace"
+              + " last saved with --save and run a new walk")
+  boolean watch;
+
+  @Option(
+      names = "--all-levels",
+      description =
+          "animate the machine and each of its abstractions at once, each in its own ProB"
+              + " instance, and print coverage and invariants per machine")
+  boolean allLevels;
+
+  @Option(
+      names = "--soak",
+      paramLabel = "<duration>",
+      converter = DurationConverter.class,
+      description =
+          "walk for this long, e.g. 30m or 2h, saving --save in numbered segments instead of"
+              + " one trace")
+  Duration soak;
+
+  @Option(
+      names = "--segment-steps",
+      paramLabel = "<n>",
+      defaultValue = "100000",
+      description = "with --soak, steps per saved trace segment (default: ${DEFAULT-VALUE})")
+  int segmentSteps;
+
+  @Option(
+      names = "--report-interval",
+      paramLabel = "<duration>",
+      defaultValue = "1m",
+      converter = DurationConverter.class,
+      description =
+          "with --soak or check, time between progress reports (default: ${DEFAULT-VALUE})")
+  Duration reportInterval;
+
   @Option(
       names = {"-z", "--size"},
       defaultValue = "4",
@@ -67,21 +214,104 @@ public class Animate implements Callable<Integer> {
       description = "check invariants (default: ${DEFAULT-VALUE})")
   boolean checkInv;
 
+  @Option(
+      names = "--invariant-mode",
+      defaultValue = "prob",
+      description =
+          "how --invariants checks each step: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+  InvariantChecker.Mode invariantMode;
+
+  @Option(
+      names = "--invariant-stats",
+      description =
+          "with --invariant-mode incremental, print how often each invariant was evaluated and"
+              + " how long it took")
+  boolean invariantStats;
+
   @Option(names = "--perf", description = "print ProB performance info (default: ${DEFAULT-VALUE})")
   boolean perf;
 
+  @Option(
+      names = "--profile",
+      paramLabel = "<name>",
+      description =
+          "ProB preference profile: default, fast-walk, low-memory, deep-check or one from"
+              + " --profiles (default: the one autotune recorded for the model, else default)")
+  String profile;
+
+  @Option(
+      names = "--pref",
+      paramLabel = "KEY=VALUE",
+      description = "set a ProB preference, overriding the profile; can be repeated")
+  Map<String, String> prefOverrides = new LinkedHashMap<>();
+
+  @Option(
+      names = "--profiles",
+      paramLabel = "<file>",
+      description = "JSON file with more profiles (default: ~/.config/animate/profiles.json)")
+  Path profilesFile;
+
   @Option(
       names = {"-m", "--machine"},
       paramLabel = "<name>",
       description = "machine to animate (default: auto-select most refined)")
   String machineName;
 
+  @Option(
+      names = "--lazy-unzip",
+      description =
+          "extract only the machine files needed from a .zip model, skipping proof files"
+              + " (default: ${DEFAULT-VALUE})")
+  boolean lazyUnzip;
+
+  @Option(
+      names = "--zip-cache",
+      description =
+          "reuse extracted .zip models from the cache in ~/.cache/animate"
+              + " (default: ${DEFAULT-VALUE})")
+  boolean zipCache;
+
+  @Option(
+      names = "--zip-cache-size",
+      paramLabel = "<MiB>",
+      defaultValue = "1024",
+      description = "size limit of the zip cache in MiB (default: ${DEFAULT-VALUE})")
+  long zipCacheSize;
+
+  @Option(
+      names = {"-o", "--output"},
+      defaultValue = "pretty",
+      description =
+          "how steps are printed: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+  StepOutput.Format output;
+
+  @Option(
+      names = "--expand",
+      description = "with --output ndjson, include event parameters (default: ${DEFAULT-VALUE})")
+  boolean expand;
+
   @Option(
       names = "--save",
       paramLabel = "trace.json",
       description = "save animation trace in json to a file")
   Path jsonTrace;
 
+  @Option(
+      names = "--minimise",
+      description =
+          "when an invariant is violated, also save the shortest reproducing trace found by delta"
+              + " debugging next to --save, as name.min.json")
+  boolean minimise;
+
+  @Option(
+      names = "--metrics",
+      paramLabel = "<file>",
+      description =
+          "write timing histograms of each phase to a .json file, or a .prom file in"
+              + " Prometheus text format",
+      scope = ScopeType.INHERIT)
+  Path metrics;
+
   @Option(
       names = "--debug",
       description = "enable debug log (default: ${DEFAULT-VALUE})",
@@ -95,9 +325,7 @@ public class Animate implements Callable<Integer> {
   }
 
   private void printCoverage(StateSpace stateSpace) {
-    ComputeCoverageCommand cmd = new ComputeCoverageCommand();
-    stateSpace.execute(cmd);
-    ComputeCoverageResult coverage = cmd.getResult();
+    ComputeCoverageResult coverage = computeCoverage(stateSpace);
     List<String> ops = coverage.getOps();
     List<String> uncovered = coverage.getUncovered();
 
@@ -110,34 +338,7 @@ public class Animate implements Callable<Integer> {
     }
   }
 
-  private List<String> findViolatedInvariants(StateSpace stateSpace, State state) {
-    Object mainComponent = stateSpace.getMainComponent();
-    if (mainComponent == null) {
-      logger.warn("Main component is null, cannot check invariants");
-      return Collections.emptyList();
-    }
-    if (!(mainComponent instanceof EventBMachine)) {
-      logger.warn(
-          "Main component is not an EventBMachine: {}, cannot check invariants",
-          mainComponent.getClass().getName());
-      return Collections.emptyList();
-    }
-
-    List<IEvalElement> invariants =
-        ((EventBMachine) mainComponent)
-            .getAllInvariants().stream().map(i -> i.getPredicate()).collect(Collectors.toList());
-    List<AbstractEvalResult> results = state.eval(invariants);
-
-    List<String> violatedInvariants =
-        IntStream.range(0, results.size())
-            .filter(i -> results.get(i) != EvalResult.TRUE)
-            .mapToObj(i -> invariants.get(i).toString())
-            .collect(Collectors.toList());
-
-    return violatedInvariants;
-  }
-
-  private void validateInput() throws IllegalArgumentException {
+  void validateInput() throws IllegalArgumentException {
     if (model == null) {
       throw new IllegalArgumentException("Model file is required");
     }
@@ -156,46 +357,233 @@ public class Animate implements Callable<Integer> {
     if (size <= 0) {
       throw new IllegalArgumentException("Default set size must be positive, got: " + size);
     }
+    if (walks <= 0) {
+      throw new IllegalArgumentException("Number of walks must be positive, got: " + walks);
+    }
+    if (jobs <= 0) {
+      throw new IllegalArgumentException("Number of jobs must be positive, got: " + jobs);
+    }
+    if (zipCacheSize <= 0) {
+      throw new IllegalArgumentException("Zip cache size must be positive, got: " + zipCacheSize);
+    }
+    if (soak != null && (soak.isZero() || soak.isNegative())) {
+      throw new IllegalArgumentException("Soak duration must be positive, got: " + soak);
+    }
+    if (segmentSteps <= 0) {
+      throw new IllegalArgumentException(
+          "Number of segment steps must be positive, got: " + segmentSteps);
+    }
+    if (reportInterval.isZero() || reportInterval.isNegative()) {
+      throw new IllegalArgumentException(
+          "Report interval must be positive, got: " + reportInterval);
+    }
   }
 
-  private StateSpace loadModel() throws IOException {
-    validateInput();
+  Path profilesFile() {
+    return profilesFile != null ? profilesFile : PrefProfiles.defaultFile();
+  }
 
-    logger.info("Load Event-B Machine");
+  PrefProfiles loadProfiles() {
+    try {
+      return PrefProfiles.load(profilesFile());
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          "Cannot read profiles from " + profilesFile() + ": " + e.getMessage(), e);
+    }
+  }
+
+  /** The preferences of {@code --profile}, or of the profile recorded for the model. */
+  Map<String, String> buildPrefs() {
+    return buildPrefs(loadProfiles(), model, machineName);
+  }
+
+  /** The preferences of {@code --profile}, or of the profile recorded for {@code model}. */
+  Map<String, String> buildPrefs(PrefProfiles profiles, Path model, String machineName) {
+    String name = profile;
+    if (name == null && model != null) {
+      name = profiles.profileFor(PrefProfiles.modelKey(model, machineName));
+    }
+    if (name == null) {
+      name = PrefProfiles.DEFAULT;
+    } else {
+      logger.info("Using preference profile {}", name);
+    }
+    return buildPrefs(profiles.prefs(name));
+  }
 
-    Map<String, String> prefs = new HashMap<>();
-    prefs.put("MEMOIZE_FUNCTIONS", "true");
-    prefs.put("SYMBOLIC", "true");
-    prefs.put("TRACE_INFO", "true");
-    prefs.put("TRY_FIND_ABORT", "true");
-    prefs.put("SYMMETRY_MODE", "hash");
+  /** {@code profilePrefs} with the preferences given by other options. */
+  Map<String, String> buildPrefs(Map<String, String> profilePrefs) {
+    Map<String, String> prefs = new HashMap<>(profilePrefs);
     prefs.put("DEFAULT_SETSIZE", String.valueOf(size));
-    prefs.put("COMPRESSION", "true");
-    prefs.put("CLPFD", "true");
-    prefs.put("PROOF_INFO", "true");
-    prefs.put("OPERATION_REUSE", "true");
     if (perf) {
       prefs.put("PERFORMANCE_INFO", "true");
     }
+    prefs.putAll(prefOverrides);
+    return prefs;
+  }
 
-    Path resolvedModel = modelResolver.resolve(model, machineName);
-    String resolvedMachineName = resolvedModel.getFileName().toString().replaceFirst("\\.bum$", "");
-    System.out.println("Machine: " + resolvedMachineName);
-    StateSpace stateSpace = api.eventb_load(resolvedModel.toString(), prefs);
+  private static String machineNameOf(Path bumFile) {
+    return PathNames.fileName(bumFile).replaceFirst("\\.bum$", "");
+  }
+
+  void configureResolver(ModelResolver resolver) {
+    resolver.lazyUnzip = lazyUnzip;
+    if (zipCache) {
+      resolver.extractionCache =
+          new ExtractionCache(ExtractionCache.defaultRoot(), zipCacheSize * 1024 * 1024);
+    }
+  }
+
+  Path resolveModel() throws IOException {
+    configureResolver(modelResolver);
+    try (Metrics.Timer timer = Metrics.time("resolve")) {
+      resolvedModel = modelResolver.resolve(model, machineName);
+    }
+    printMachine(machineNameOf(resolvedModel));
+    return resolvedModel;
+  }
 
+  static ComputeCoverageResult computeCoverage(StateSpace stateSpace) {
+    try (Metrics.Timer timer = Metrics.time("coverage")) {
+      ComputeCoverageCommand cmd = new ComputeCoverageCommand();
+      stateSpace.execute(cmd);
+      return cmd.getResult();
+    }
+  }
+
+  private void printMachine(String name) {
+    loadedMachine = name;
+    if (output == StepOutput.Format.pretty) {
+      System.out.println("Machine: " + name);
+    }
+  }
+
+  private void readProbVersion(StateSpace stateSpace) {
     GetVersionCommand version = new GetVersionCommand();
     stateSpace.execute(version);
     probVersionString = version.getVersionString();
     logger.info("ProB Version: " + probVersionString + "\n");
+  }
+
+  /** The version of the probcli last loaded, or {@code null} before any model is loaded. */
+  String probVersion() {
+    return probVersionString;
+  }
 
+  private StateSpace loadModel() throws IOException {
+    validateInput();
+
+    logger.info("Load Event-B Machine");
+
+    Map<String, String> prefs = buildPrefs();
+    cacheKey = null;
+    if (modelCache != null) {
+      cacheKey = ModelCache.key(model, machineName, prefs);
+      cachePrefs = prefs;
+      ModelCache.Entry cached;
+      try {
+        cached = modelCache.take(cacheKey);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for the cached model", e);
+      }
+      if (cached != null) {
+        logger.info("Reusing loaded model");
+        cachedMachine = cached.machineName();
+        printMachine(cached.machineName());
+        readProbVersion(cached.stateSpace());
+        return cached.stateSpace();
+      }
+    }
+
+    resolveModel();
+    StateSpace stateSpace;
+    try (Metrics.Timer timer = Metrics.time("load")) {
+      stateSpace = api.eventb_load(resolvedModel.toString(), prefs);
+    }
+    readProbVersion(stateSpace);
+    cachedMachine = machineNameOf(resolvedModel);
     return stateSpace;
   }
 
-  private void initLogging() {
+  /**
+   * Disposes of a state space from {@link #initAndLoadModel}. When serving, a fresh copy of the
+   * model is loaded into the cache for the next request, so that no request sees the states
+   * explored by an earlier one.
+   */
+  void releaseModel(StateSpace stateSpace) {
+    stateSpace.kill();
+    if (modelCache == null || cacheKey == null) return;
+
+    modelCache.reload(cacheKey, cachedMachine, reloader(cacheKey, cachePrefs));
+    cacheKey = null;
+  }
+
+  /**
+   * Disposes of a pool from {@link #initAndLoadPool}. When serving, fresh copies of its instances
+   * are loaded into the cache for the next request, like {@link #releaseModel} does.
+   */
+  void releasePool(StateSpacePool pool) {
+    pool.close();
+    if (modelCache == null || poolKey == null) return;
+
+    String machine = machineNameOf(resolvedModel);
+    for (int i = 0; i < pool.all().size(); i++) {
+      modelCache.reload(instanceKey(poolKey, i), machine, reloader(poolKey, poolPrefs));
+    }
+    poolKey = null;
+  }
+
+  /** The cache entry of the {@code index}-th instance of a pool. */
+  private static String instanceKey(String key, int index) {
+    return key + "#" + index;
+  }
+
+  /** Loads the current model again, unless it changed since it was cached under {@code key}. */
+  private ModelCache.Loader reloader(String key, Map<String, String> prefs) {
+    Path source = model;
+    String machine = machineName;
+    return () -> {
+      if (!ModelCache.key(source, machine, prefs).equals(key)) {
+        throw new IOException("Model changed since it was cached: " + source);
+      }
+      ModelResolver resolver = new ModelResolver();
+      configureResolver(resolver);
+      try {
+        return api.eventb_load(resolver.resolve(source, machine).toString(), prefs);
+      } finally {
+        resolver.cleanupTempDir();
+      }
+    };
+  }
+
+  void initLogging() {
     if (!debug) {
       Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
       root.setLevel(Level.WARN);
-      logger.setLevel(Level.INFO);
+      // Progress messages would interleave with machine-readable output on stdout
+      logger.setLevel(output == StepOutput.Format.pretty ? Level.INFO : Level.WARN);
+    }
+    if (metrics != null && !Metrics.isEnabled()) {
+      Metrics.enable();
+      // Guice is set up once per process, so only a standalone run pays for it
+      if (modelCache == null && guiceInitNanos > 0) {
+        Metrics.record("guice_init", guiceInitNanos);
+      }
+    }
+  }
+
+  /** Writes the metrics collected since {@link #initLogging}, if any were requested. */
+  private int writeMetrics(int exitCode) {
+    if (!Metrics.isEnabled()) return exitCode;
+    try {
+      Metrics.write(metrics);
+      return exitCode;
+    } catch (IOException e) {
+      System.err.println("Error writing metrics: " + e.getMessage());
+      return exitCode == 0 ? 1 : exitCode;
+    } finally {
+      Metrics.disable();
     }
   }
 
@@ -211,37 +599,134 @@ public class Animate implements Callable<Integer> {
     }
   }
 
+  StateSpacePool initAndLoadPool(int size) {
+    initLogging();
+    try {
+      validateInput();
+      logger.info("Load Event-B Machine into {} ProB instances", size);
+      StateSpacePool pool = loadPool(size);
+      readProbVersion(pool.all().get(0));
+      return pool;
+    } catch (Exception e) {
+      modelResolver.cleanupTempDir();
+      logger.error("Error loading model", e);
+      System.err.println("Error loading model: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Loads {@code size} instances of the model. When serving, instances cached by an earlier
+   * request with the same model and preferences are taken instead of loading them again.
+   */
+  private StateSpacePool loadPool(int size) throws IOException, InterruptedException {
+    Map<String, String> prefs = buildPrefs();
+    Path resolved = resolvedModel != null ? resolvedModel : resolveModel();
+    List<StateSpace> reused = new ArrayList<>();
+    if (modelCache != null) {
+      poolKey = ModelCache.key(model, machineName, prefs);
+      poolPrefs = prefs;
+      for (int i = 0; i < size; i++) {
+        ModelCache.Entry entry = modelCache.take(instanceKey(poolKey, i));
+        if (entry != null) {
+          reused.add(entry.stateSpace());
+        }
+      }
+      if (!reused.isEmpty()) {
+        logger.info("Reusing {} loaded ProB instances", reused.size());
+      }
+    }
+    return StateSpacePool.load(api, resolved, prefs, size, reused);
+  }
+
+  long baseSeed() {
+    if (seed == null) {
+      seed = new Random().nextLong();
+      logger.info("Random seed: {}", seed);
+    }
+    return seed;
+  }
+
+  /** The mode walks check invariants in, or {@code null} without --invariants. */
+  InvariantChecker.Mode invariants() {
+    return checkInv ? invariantMode : null;
+  }
+
+  private void recordInvariantTimings(List<StateSpace> stateSpaces) {
+    if (!invariantStats) return;
+    if (!checkInv || invariantMode != InvariantChecker.Mode.incremental) {
+      logger.warn("--invariant-stats needs --invariants --invariant-mode incremental, ignoring it");
+      return;
+    }
+    for (StateSpace stateSpace : stateSpaces) {
+      InvariantChecker checker = InvariantChecker.of(stateSpace);
+      if (checker != null) {
+        checker.recordTimings();
+      }
+    }
+  }
+
+  private void printInvariantTimings(List<StateSpace> stateSpaces) {
+    if (!checkInv || !invariantStats || invariantMode != InvariantChecker.Mode.incremental) return;
+    List<InvariantChecker> checkers = new ArrayList<>();
+    for (StateSpace stateSpace : stateSpaces) {
+      checkers.add(InvariantChecker.of(stateSpace));
+    }
+    InvariantChecker.printTimings(checkers);
+  }
+
   boolean invariantViolated;
+  // Steps the last walk of start took, fewer than --steps if it ended early
+  int stepsTaken;
+  private List<String> violatedInvariants = List.of();
 
   public Trace start(final StateSpace stateSpace) {
     stateSpace.startTransaction();
     Trace trace = new Trace(stateSpace);
     invariantViolated = false;
+    violatedInvariants = List.of();
 
     try {
-      System.out.println("Animation steps:");
-      for (int i = 0; i < steps; i++) {
-        Trace newTrace = trace.anyEvent(null);
-        if (newTrace == trace) {
-          System.err.println("Error: Can't find an event to execute from this state (deadlock)");
-          break;
-        }
-        trace = newTrace;
-
-        Transition transition = trace.getCurrent().getTransition().evaluate(FormulaExpand.EXPAND);
-        System.out.println(transition.getPrettyRep());
-        if (checkInv && !trace.getCurrentState().isInvariantOk()) {
-          List<String> inv = findViolatedInvariants(stateSpace, trace.getCurrentState());
-          System.err.println("Error: violated invariants:\n\t - " + String.join("\n\t - ", inv));
-          invariantViolated = true;
-          break;
-        }
+      recordInvariantTimings(List.of(stateSpace));
+      StepOutput stepOutput = new StepOutput(output, expand, System.out);
+      if (output == StepOutput.Format.pretty) {
+        System.out.println("Animation steps:");
+      }
+      RandomWalk walk =
+          new RandomWalk(stateSpace, baseSeed(), invariants(), strategy.create(stateSpace));
+      walk.setStallSteps(stall);
+      if (enablingStats) {
+        walk.setEnablingStats(new EnablingStats());
+      }
+      trace = walk.run(trace, steps, stepOutput);
+      stepsTaken = walk.getStepsTaken();
+      if (walk.isDeadlocked()) {
+        System.err.println("Error: Can't find an event to execute from this state (deadlock)");
+      }
+      if (walk.isInvariantViolated()) {
+        violatedInvariants = walk.getViolatedInvariants();
+        System.err.println(
+            "Error: violated invariants:\n\t - " + String.join("\n\t - ", violatedInvariants));
+        invariantViolated = true;
       }
-      System.out.println();
 
-      System.out.println("Current state:\n" + trace.getCurrentState().getStateRep());
-      System.out.println();
-      printCoverage(stateSpace);
+      if (output == StepOutput.Format.pretty) {
+        System.out.println();
+        printDistinctStates(walk);
+        if (enablingStats) {
+          walk.getEnablingStats().printReport(EnablingStats.eventNames(stateSpace));
+        }
+        System.out.println("Current state:\n" + trace.getCurrentState().getStateRep());
+        System.out.println();
+        printCoverage(stateSpace);
+      } else if (output == StepOutput.Format.ndjson) {
+        stepOutput.summary(
+            loadedMachine,
+            walk,
+            computeCoverage(stateSpace).getUncovered(),
+            EnablingStats.eventNames(stateSpace));
+      }
+      printInvariantTimings(List.of(stateSpace));
     } finally {
       stateSpace.endTransaction();
     }
@@ -249,44 +734,361 @@ public class Animate implements Callable<Integer> {
     return trace;
   }
 
+  private static void printDistinctStates(RandomWalk walk) {
+    int taken = walk.getStepsTaken();
+    int distinct = walk.getDistinctStates();
+    StringBuilder line = new StringBuilder("Distinct states: ").append(distinct);
+    if (taken > 0) {
+      double percent = 100.0 * distinct / taken;
+      line.append(String.format(Locale.ROOT, " in %d steps (%.0f%%)", taken, percent));
+    }
+    if (walk.getRestarts() > 0) {
+      line.append(", ").append(walk.getRestarts()).append(" restarts after stalling");
+    }
+    System.out.println(line);
+    System.out.println();
+  }
+
+  boolean saveTrace(Trace trace) {
+    return saveTrace(trace, jsonTrace);
+  }
+
+  private boolean saveTrace(Trace trace, Path file) {
+    JsonMetadata metadata =
+        new JsonMetadataBuilder("Trace", 6)
+            .withSavedNow()
+            .withCreator("animate")
+            .withProBCliVersion(probVersionString)
+            .withModelName(trace.getStateSpace().getMainComponent().toString())
+            .build();
+    TraceJsonFile abstractJsonFile = new TraceJsonFile(trace, metadata);
+    logger.info("Saving animation trace to {}", file);
+
+    try (Metrics.Timer timer = Metrics.time("trace_save")) {
+      if (CompactTraceFile.isCompact(file)) {
+        CompactTraceFile.save(abstractJsonFile, file);
+      } else {
+        traceManager.save(file, abstractJsonFile);
+      }
+      return true;
+    } catch (IOException e) {
+      logger.error("Error saving trace", e);
+      System.err.println("Error saving trace: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Shrinks the violating trace just saved to --save and saves the result next to it. Candidates
+   * are replayed on {@code pool}, or on --jobs newly loaded instances if it is {@code null}.
+   */
+  private boolean saveMinimised(List<String> violated, StateSpacePool pool) {
+    if (jsonTrace == null) {
+      logger.warn("--minimise needs --save, the violating trace is not minimised");
+      return false;
+    }
+    if (pool == null) {
+      StateSpacePool loaded;
+      try {
+        loaded = loadPool(jobs);
+      } catch (IOException e) {
+        System.err.println("Error minimising trace: " + e.getMessage());
+        return false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      try {
+        return saveMinimised(violated, loaded);
+      } finally {
+        releasePool(loaded);
+      }
+    }
+
+    try {
+      Trace minimised = new TraceMinimiser(pool, violated).minimise(jsonTrace);
+      if (minimised == null) {
+        System.err.println("Error minimising trace: replaying it does not reproduce the violation");
+        return false;
+      }
+      Path file = TraceMinimiser.minimisedFile(jsonTrace);
+      if (output == StepOutput.Format.pretty) {
+        System.out.println(
+            "Minimised trace to " + minimised.getTransitionList().size() + " steps: " + file);
+      }
+      return saveTrace(minimised, file);
+    } catch (IOException | ExecutionException e) {
+      logger.error("Error minimising trace", e);
+      System.err.println("Error minimising trace: " + e.getMessage());
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private int animateInParallel() {
+    StateSpacePool pool = initAndLoadPool(Math.min(jobs, walks));
+    if (pool == null) return 1;
+
+    try {
+      ParallelAnimation animation =
+          new ParallelAnimation(pool, steps, invariants(), strategy, stall);
+      recordInvariantTimings(pool.all());
+      List<RandomWalk> results = animation.run(walks, baseSeed());
+      animation.printReport(results);
+      printInvariantTimings(pool.all());
+
+      // Prefer saving a walk that reproduces a violation over an arbitrary one
+      RandomWalk violating =
+          results.stream().filter(RandomWalk::isInvariantViolated).findFirst().orElse(null);
+      RandomWalk saved = violating != null ? violating : results.get(0);
+      if (jsonTrace != null && !saveTrace(saved.getTrace())) {
+        return 1;
+      }
+      if (violating != null && minimise) {
+        saveMinimised(violating.getViolatedInvariants(), pool);
+      }
+
+      return violating != null ? 1 : 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.err.println("Animation interrupted");
+      return 1;
+    } catch (ExecutionException e) {
+      logger.error("Error during animation", e.getCause());
+      System.err.println("Error during animation: " + e.getCause().getMessage());
+      return 1;
+    } finally {
+      releasePool(pool);
+      modelResolver.cleanupTempDir();
+    }
+  }
+
+  private int animateUntilCoverage() {
+    if (maxSteps <= 0 && maxTime <= 0) {
+      logger.warn("No --max-steps or --max-time given, running until every operation is covered");
+    }
+    StateSpacePool pool = initAndLoadPool(jobs);
+    if (pool == null) return 1;
+
+    try {
+      CoverageSwarm swarm =
+          new CoverageSwarm(pool, steps, invariants(), strategy, maxSteps, maxTime);
+      recordInvariantTimings(pool.all());
+      boolean complete = swarm.run(baseSeed());
+      swarm.printReport(complete);
+      printInvariantTimings(pool.all());
+
+      RandomWalk violating = swarm.getViolatingWalk();
+      if (violating != null && jsonTrace != null && !saveTrace(violating.getTrace())) {
+        return 1;
+      }
+      if (violating != null && minimise) {
+        saveMinimised(violating.getViolatedInvariants(), pool);
+      }
+      return violating != null || !complete ? 1 : 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.err.println("Animation interrupted");
+      return 1;
+    } catch (ExecutionException e) {
+      logger.error("Error during animation", e.getCause());
+      System.err.println("Error during animation: " + e.getCause().getMessage());
+      return 1;
+    } finally {
+      releasePool(pool);
+      modelResolver.cleanupTempDir();
+    }
+  }
+
+  private int watch() {
+    initLogging();
+    try {
+      validateInput();
+    } catch (IllegalArgumentException e) {
+      System.err.println("Error: " + e.getMessage());
+      return 1;
+    }
+    boolean directory = Files.isDirectory(model);
+    Path watched = directory ? model.toAbsolutePath() : PathNames.parentDir(model);
+    try (ModelWatcher watcher = new ModelWatcher(watched, directory)) {
+      while (true) {
+        Predicate<Path> relevant = watchCycle();
+        System.out.println("Watching " + watched + " for changes, press Ctrl-C to stop.");
+        Set<Path> changed = watcher.awaitChange(relevant);
+        System.out.println();
+        System.out.println(
+            "Changed: "
+                + changed.stream()
+                    .map(PathNames::fileName)
+                    .collect(Collectors.joining(", ")));
+      }
+    } catch (IOException e) {
+      logger.error("Error watching model", e);
+      System.err.println("Error watching model: " + e.getMessage());
+      return 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return 0;
+    }
+  }
+
+  /**
+   * Loads the model, replays the trace saved by the previous cycle and runs a new walk. Returns
+   * the files whose change affects the model.
+   */
+  private Predicate<Path> watchCycle() {
+    long start = System.nanoTime();
+    resolvedModel = null;
+    StateSpace stateSpace = initAndLoadModel();
+    if (stateSpace == null) {
+      // Wait for the fix to any file of the project
+      return ModelWatcher.filesOf(model, null);
+    }
+    try {
+      Predicate<Path> relevant = ModelWatcher.filesOf(model, resolvedModel);
+      if (jsonTrace != null && Files.exists(jsonTrace)) {
+        ReplayCommand.Result result = ReplayCommand.replay(stateSpace, jsonTrace);
+        System.out.println("Replay of " + jsonTrace + ": " + result.status());
+        ReplayCommand.printError(result);
+      }
+      Trace trace = start(stateSpace);
+      if (jsonTrace != null) {
+        saveTrace(trace);
+      }
+      System.out.println("Done in " + SoakRun.formatElapsed(System.nanoTime() - start));
+      return relevant;
+    } finally {
+      releaseModel(stateSpace);
+      modelResolver.cleanupTempDir();
+    }
+  }
+
+  private int animateAllLevels() {
+    initLogging();
+    List<RefinementLevels.Level> levels;
+    try {
+      validateInput();
+      Path selected = resolveModel();
+      RefinementGraph graph = RefinementGraph.scanDirectory(PathNames.parentDir(selected));
+      levels = RefinementLevels.levels(graph, machineNameOf(selected));
+    } catch (Exception e) {
+      modelResolver.cleanupTempDir();
+      logger.error("Error loading model", e);
+      System.err.println("Error loading model: " + e.getMessage());
+      return 1;
+    }
+
+    try {
+      logger.info("Load {} machines into their own ProB instances", levels.size());
+      RefinementLevels run =
+          new RefinementLevels(api, buildPrefs(), steps, invariants(), strategy, stall);
+      List<RefinementLevels.Result> results = run.run(levels, baseSeed());
+      RefinementLevels.printSummary(results);
+      return results.stream().allMatch(RefinementLevels.Result::ok) ? 0 : 1;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.err.println("Animation interrupted");
+      return 1;
+    } finally {
+      modelResolver.cleanupTempDir();
+    }
+  }
+
+  private int soak() {
+    StateSpace stateSpace = initAndLoadModel();
+    if (stateSpace == null) return 1;
+
+    if (jsonTrace == null) {
+      logger.warn("No --save file given, soak segments are not written");
+    }
+    try {
+      recordInvariantTimings(List.of(stateSpace));
+      SoakRun run =
+          new SoakRun(
+              stateSpace, invariants(), strategy, segmentSteps, SOAK_RECENT_STEPS, reportInterval);
+      boolean ok = run.run(soak, baseSeed(), jsonTrace, this::saveTrace);
+
+      RandomWalk violating = run.getViolatingWalk();
+      if (violating != null) {
+        System.err.println(
+            "Error: violated invariants:\n\t - "
+                + String.join("\n\t - ", violating.getViolatedInvariants()));
+        run.printRecent();
+      }
+      printInvariantTimings(List.of(stateSpace));
+      return ok ? 0 : 1;
+    } finally {
+      releaseModel(stateSpace);
+      modelResolver.cleanupTempDir();
+    }
+  }
+
   @Override
   public Integer call() {
+    if (watch) {
+      return watch();
+    }
+    if (allLevels) {
+      return animateAllLevels();
+    }
+    if (soak != null) {
+      return soak();
+    }
+    if (untilCoverage) {
+      return animateUntilCoverage();
+    }
+    if (walks > 1) {
+      return animateInParallel();
+    }
+
     StateSpace stateSpace = initAndLoadModel();
     if (stateSpace == null) return 1;
 
     try {
       Trace trace = start(stateSpace);
 
-      if (jsonTrace != null) {
-        JsonMetadata metadata =
-            new JsonMetadataBuilder("Trace", 6)
-                .withSavedNow()
-                .withCreator("animate")
-                .withProBCliVersion(probVersionString)
-                .withModelName(stateSpace.getMainComponent().toString())
-                .build();
-        TraceJsonFile abstractJsonFile = new TraceJsonFile(trace, metadata);
-        logger.info("Saving animation trace to {}", jsonTrace);
-
-        try {
-          traceManager.save(jsonTrace, abstractJsonFile);
-        } catch (IOException e) {
-          logger.error("Error saving trace", e);
-          System.err.println("Error saving trace: " + e.getMessage());
-          return 1;
-        }
+      if (jsonTrace != null && !saveTrace(trace)) {
+        return 1;
+      }
+      if (invariantViolated && minimise) {
+        saveMinimised(violatedInvariants, null);
       }
 
       return invariantViolated ? 1 : 0;
     } finally {
-      stateSpace.kill();
+      releaseModel(stateSpace);
       modelResolver.cleanupTempDir();
     }
   }
 
   public static int execute(String[] args) {
-    Animate m = INJECTOR.getInstance(Animate.class);
-    return new CommandLine(m).execute(args);
+    Integer port;
+    try {
+      port = ServeClient.connectPort(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      return 2;
+    }
+    if (port != null) {
+      return ServeClient.forward(port, args);
+    }
+
+    Animate m = Injection.INJECTOR.getInstance(Animate.class);
+    return m.writeMetrics(new CommandLine(m).execute(args));
+  }
+
+  /** Runs one request of 'animate serve', with relative paths taken from the client. */
+  static int execute(String[] args, Path workingDir, ModelCache cache) {
+    Animate m = Injection.INJECTOR.getInstance(Animate.class);
+    m.modelCache = cache;
+    m.workingDir = workingDir;
+    CommandLine cmd = new CommandLine(m);
+    cmd.registerConverter(Path.class, s -> workingDir.resolve(s));
+    cmd.setOut(new PrintWriter(System.out, true));
+    cmd.setErr(new PrintWriter(System.err, true));
+    return m.writeMetrics(cmd.execute(args));
   }
 
   public static void main(String[] args) {
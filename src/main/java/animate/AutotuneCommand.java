@@ -0,0 +1,193 @@
+package animate;
+
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParentCommand;
+
+@Command(
+    name = "autotune",
+    description =
+        "Time short random walks under each preference profile and record the fastest one for"
+            + " the model")
+class AutotuneCommand implements Callable<Integer> {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(AutotuneCommand.class);
+
+  @ParentCommand Animate parent;
+
+  @Option(
+      names = "--candidates",
+      paramLabel = "<name>",
+      split = ",",
+      description = "profiles to compare (default: all built-in profiles and those of --profiles)")
+  List<String> candidates;
+
+  @Option(names = "--no-save", description = "print the timings without recording the best profile")
+  boolean noSave;
+
+  /** Timings of one profile; {@code error} is set if the model could not be animated with it. */
+  private record Result(String profile, long loadNanos, int steps, long walkNanos, String error) {
+    double stepsPerSecond() {
+      return walkNanos > 0 ? steps * 1e9 / walkNanos : 0;
+    }
+  }
+
+  @Override
+  public Integer call() {
+    parent.initLogging();
+    PrefProfiles profiles;
+    List<String> names;
+    Path model;
+    try {
+      parent.validateInput();
+      profiles = parent.loadProfiles();
+      names = candidates != null ? candidates : new ArrayList<>(profiles.names());
+      for (String name : names) {
+        profiles.prefs(name);
+      }
+      model = parent.resolveModel();
+    } catch (IllegalArgumentException | IOException e) {
+      parent.modelResolver.cleanupTempDir();
+      System.err.println("Error: " + e.getMessage());
+      return 1;
+    }
+
+    // Every profile walks from the same seeds
+    long seed = parent.baseSeed();
+    int workers = Math.min(parent.jobs, names.size());
+    System.out.println(
+        "Timing "
+            + names.size()
+            + " profiles, "
+            + parent.walks
+            + " walks of "
+            + parent.steps
+            + " steps each, "
+            + workers
+            + " at a time.");
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    List<Result> results = new ArrayList<>();
+    try {
+      List<Future<Result>> futures = new ArrayList<>();
+      for (String name : names) {
+        Map<String, String> prefs = parent.buildPrefs(profiles.prefs(name));
+        futures.add(executor.submit(() -> time(model, name, prefs, seed)));
+      }
+      for (Future<Result> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.err.println("Error: autotune interrupted");
+      return 1;
+    } catch (ExecutionException e) {
+      System.err.println("Error timing profiles: " + e.getCause().getMessage());
+      return 1;
+    } finally {
+      executor.shutdownNow();
+      parent.modelResolver.cleanupTempDir();
+    }
+
+    printTable(results);
+    Result best = null;
+    for (Result result : results) {
+      if (result.error() == null
+          && (best == null || result.stepsPerSecond() > best.stepsPerSecond())) {
+        best = result;
+      }
+    }
+    if (best == null) {
+      System.err.println("Error: the model could not be animated with any profile");
+      return 1;
+    }
+    System.out.println("Best profile: " + best.profile());
+
+    if (!noSave) {
+      String modelKey = PrefProfiles.modelKey(parent.model, parent.machineName);
+      try {
+        PrefProfiles.recordBest(parent.profilesFile(), modelKey, best.profile());
+        System.out.println("Recorded for " + modelKey + " in " + parent.profilesFile());
+      } catch (IOException e) {
+        System.err.println("Error saving profile: " + e.getMessage());
+        return 1;
+      }
+    }
+    return 0;
+  }
+
+  /** Loads the model with {@code prefs} into a new instance and runs the walks on it. */
+  private Result time(Path model, String profile, Map<String, String> prefs, long seed) {
+    long start = System.nanoTime();
+    StateSpace stateSpace = null;
+    try {
+      stateSpace = parent.api.eventb_load(model.toString(), prefs);
+      long loadNanos = System.nanoTime() - start;
+
+      int steps = 0;
+      start = System.nanoTime();
+      stateSpace.startTransaction();
+      try {
+        for (int i = 0; i < parent.walks; i++) {
+          RandomWalk walk =
+              new RandomWalk(
+                  stateSpace, seed + i, parent.invariants(), parent.strategy.create(stateSpace));
+          walk.run(new Trace(stateSpace), parent.steps, transition -> {});
+          steps += walk.getStepsTaken();
+        }
+      } finally {
+        stateSpace.endTransaction();
+      }
+      return new Result(profile, loadNanos, steps, System.nanoTime() - start, null);
+    } catch (IOException | RuntimeException e) {
+      logger.debug("Timing profile {} failed", profile, e);
+      return new Result(profile, 0, 0, 0, e.getMessage());
+    } finally {
+      if (stateSpace != null) {
+        stateSpace.kill();
+      }
+    }
+  }
+
+  private static void printTable(List<Result> results) {
+    int width = "PROFILE".length();
+    for (Result result : results) {
+      width = Math.max(width, result.profile().length());
+    }
+    String format = "%-" + width + "s  %8s  %8s  %10s";
+
+    System.out.println();
+    System.out.println(String.format(Locale.ROOT, format, "PROFILE", "LOAD", "STEPS", "STEPS/S"));
+    for (Result result : results) {
+      if (result.error() != null) {
+        System.out.println(
+            String.format(
+                Locale.ROOT, "%-" + width + "s  ERROR %s", result.profile(), result.error()));
+        continue;
+      }
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              format,
+              result.profile(),
+              String.format(Locale.ROOT, "%.2fs", result.loadNanos() / 1e9),
+              result.steps(),
+              String.format(Locale.ROOT, "%.1f", result.stepsPerSecond())));
+    }
+    System.out.println();
+  }
+}
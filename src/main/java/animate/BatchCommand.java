@@ -0,0 +1,282 @@
+package animate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParentCommand;
+
+@Command(
+    name = "batch",
+    description = "Animate every model found under a directory, one result line per model")
+class BatchCommand implements Callable<Integer> {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(BatchCommand.class);
+
+  enum Format {
+    json,
+    junit
+  }
+
+  enum Status {
+    passed,
+    failed,
+    error
+  }
+
+  record Result(
+      String model,
+      String machine,
+      Status status,
+      int steps,
+      boolean deadlocked,
+      List<String> violatedInvariants,
+      List<String> uncovered,
+      double seconds,
+      String message) {}
+
+  @ParentCommand Animate parent;
+
+  @Option(
+      names = {"-f", "--format"},
+      defaultValue = "json",
+      description = "result format: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+  Format format;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Override
+  public Integer call() {
+    parent.initLogging();
+    Path root = parent.model;
+    Map<String, List<Path>> projects;
+    PrefProfiles profiles;
+    try {
+      parent.validateInput();
+      projects = findProjects(root);
+      profiles = parent.loadProfiles();
+    } catch (IllegalArgumentException | IOException e) {
+      System.err.println("Error: " + e.getMessage());
+      return 1;
+    }
+    if (projects.isEmpty()) {
+      System.err.println("Error: no models found under " + root);
+      return 1;
+    }
+
+    long seed = parent.baseSeed();
+    int workers = Math.min(parent.jobs, projects.size());
+    logger.info("Animating {} models with {} workers", projects.size(), workers);
+
+    if (format == Format.junit) {
+      System.out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      System.out.println("<testsuite name=\"animate\">");
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    List<Future<Result>> futures = new ArrayList<>();
+    for (Map.Entry<String, List<Path>> project : projects.entrySet()) {
+      futures.add(
+          executor.submit(
+              () -> {
+                Result result = animate(project.getKey(), project.getValue(), profiles, seed);
+                print(result);
+                return result;
+              }));
+    }
+    executor.shutdown();
+
+    boolean failed = false;
+    try {
+      for (Future<Result> future : futures) {
+        failed |= future.get().status() != Status.passed;
+      }
+    } catch (Exception e) {
+      logger.error("Batch animation failed", e);
+      System.err.println("Error: batch animation failed: " + e.getMessage());
+      failed = true;
+    } finally {
+      executor.shutdownNow();
+    }
+
+    if (format == Format.junit) {
+      System.out.println("</testsuite>");
+    }
+    return failed ? 1 : 0;
+  }
+
+  /**
+   * Maps a display name, relative to {@code root}, to the inputs of one project: the {@code .bum}
+   * files of a directory, or a single {@code .zip} archive.
+   */
+  private static Map<String, List<Path>> findProjects(Path root) throws IOException {
+    Map<String, List<Path>> projects = new TreeMap<>();
+    if (!Files.isDirectory(root)) {
+      projects.put(root.toString(), List.of(root));
+      return projects;
+    }
+
+    List<Path> files;
+    try (Stream<Path> stream = Files.walk(root)) {
+      files =
+          stream
+              .filter(p -> p.toString().endsWith(".bum") || p.toString().endsWith(".zip"))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      if (file.toString().endsWith(".zip")) {
+        projects.put(root.relativize(file).toString(), List.of(file));
+      } else {
+        Path dir = file.getParent();
+        String name = dir == null || dir.equals(root) ? "." : root.relativize(dir).toString();
+        projects.computeIfAbsent(name, k -> new ArrayList<>()).add(file);
+      }
+    }
+    return projects;
+  }
+
+  /**
+   * The path autotune records the profile of a project under: the archive, the directory holding
+   * its {@code .bum} files, or the model itself when the batch was given a single file.
+   */
+  private Path projectPath(List<Path> inputs) {
+    Path first = inputs.get(0);
+    if (first.toString().endsWith(".zip") || first.equals(parent.model)) return first;
+    return PathNames.parentDir(first);
+  }
+
+  private Result animate(String name, List<Path> inputs, PrefProfiles profiles, long seed) {
+    long start = System.nanoTime();
+    ModelResolver resolver = new ModelResolver();
+    parent.configureResolver(resolver);
+    String machine = null;
+    StateSpace stateSpace = null;
+    try {
+      Path bumFile =
+          inputs.size() == 1 && inputs.get(0).toString().endsWith(".zip")
+              ? resolver.resolve(inputs.get(0))
+              : resolver.selectBumFile(inputs, null, "directory: " + name);
+      machine = PathNames.fileName(bumFile).replaceFirst("\\.bum$", "");
+
+      try (Metrics.Timer timer = Metrics.time("load")) {
+        Map<String, String> prefs = parent.buildPrefs(profiles, projectPath(inputs), null);
+        stateSpace = parent.api.eventb_load(bumFile.toString(), prefs);
+      }
+      stateSpace.startTransaction();
+      RandomWalk walk =
+          new RandomWalk(
+              stateSpace, seed, parent.invariants(), parent.strategy.create(stateSpace));
+      try {
+        walk.run(new Trace(stateSpace), parent.steps, transition -> {});
+      } finally {
+        stateSpace.endTransaction();
+      }
+
+      List<String> uncovered = Animate.computeCoverage(stateSpace).getUncovered();
+
+      return new Result(
+          name,
+          machine,
+          walk.isInvariantViolated() ? Status.failed : Status.passed,
+          walk.getStepsTaken(),
+          walk.isDeadlocked(),
+          walk.getViolatedInvariants(),
+          uncovered,
+          seconds(start),
+          null);
+    } catch (Exception e) {
+      logger.debug("Error animating {}", name, e);
+      return new Result(
+          name,
+          machine,
+          Status.error,
+          0,
+          false,
+          Collections.emptyList(),
+          Collections.emptyList(),
+          seconds(start),
+          String.valueOf(e.getMessage()));
+    } finally {
+      if (stateSpace != null) {
+        stateSpace.kill();
+      }
+      resolver.cleanupTempDir();
+    }
+  }
+
+  private static double seconds(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1e9;
+  }
+
+  private synchronized void print(Result result) throws IOException {
+    if (format == Format.junit) {
+      System.out.println(toJUnit(result));
+    } else {
+      System.out.println(toJson(result));
+    }
+    System.out.flush();
+  }
+
+  private String toJson(Result result) throws IOException {
+    ObjectNode node = mapper.createObjectNode();
+    node.put("model", result.model());
+    node.put("machine", result.machine());
+    node.put("status", result.status().name());
+    node.put("steps", result.steps());
+    node.put("deadlock", result.deadlocked());
+    node.putPOJO("violatedInvariants", result.violatedInvariants());
+    node.putPOJO("uncovered", result.uncovered());
+    node.put("seconds", result.seconds());
+    if (result.message() != null) {
+      node.put("message", result.message());
+    }
+    return mapper.writeValueAsString(node);
+  }
+
+  private static String toJUnit(Result result) {
+    StringBuilder xml = new StringBuilder();
+    xml.append("  <testcase classname=\"animate\" name=\"")
+        .append(escapeXml(result.model()))
+        .append(result.machine() != null ? "/" + escapeXml(result.machine()) : "")
+        .append("\" time=\"")
+        .append(String.format(Locale.ROOT, "%.3f", result.seconds()))
+        .append("\"");
+    if (result.status() == Status.passed) {
+      return xml.append("/>").toString();
+    }
+    xml.append(">");
+    if (result.status() == Status.failed) {
+      xml.append("<failure message=\"violated invariants\">")
+          .append(escapeXml(String.join("\n", result.violatedInvariants())))
+          .append("</failure>");
+    } else {
+      xml.append("<error message=\"").append(escapeXml(result.message())).append("\"/>");
+    }
+    return xml.append("</testcase>").toString();
+  }
+
+  private static String escapeXml(String s) {
+    String escaped = s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    return escaped.replace("\"", "&quot;");
+  }
+}
@@ -0,0 +1,197 @@
+package animate;
+
+import de.prob.statespace.State;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import de.prob.statespace.Transition;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Breadth-first exploration of the state space of one ProB instance, checking every new state for
+ * invariant violations and deadlocks.
+ *
+ * <p>Several instances of the same model can explore disjoint parts of the state space: each one
+ * explores the first levels on its own until a level holds at least one state per worker, and then
+ * keeps only every {@code workers}-th state of that level, starting at its own index. This relies
+ * on ProB listing the transitions of a state in the same order in every instance. From then on
+ * the workers share the set of states they have claimed, so a state reachable from more than one
+ * part is counted and explored only by the worker that reaches it first. The instances number their
+ * states independently, so claimed states are identified by their representation.
+ */
+class BoundedCheck {
+
+  enum Kind {
+    invariant,
+    deadlock
+  }
+
+  /** A path from the initial state to a violation. */
+  record Counterexample(Kind kind, Trace trace, List<String> violatedInvariants) {}
+
+  /** Counters and outcome shared by all workers of one check. */
+  static final class Shared {
+    final AtomicLong states = new AtomicLong();
+    final AtomicLong transitions = new AtomicLong();
+    final AtomicLong depth = new AtomicLong();
+    // Some worker had states left at the depth limit; the others go on
+    final AtomicBoolean depthLimitReached = new AtomicBoolean();
+    final AtomicBoolean stateLimitReached = new AtomicBoolean();
+    final AtomicReference<Counterexample> counterexample = new AtomicReference<>();
+    // Representations of the states found after partitioning, over all workers
+    final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    boolean stopped() {
+      return stateLimitReached.get() || counterexample.get() != null;
+    }
+  }
+
+  private final StateSpace stateSpace;
+  private final InvariantChecker.Mode invariantMode;
+  private final InvariantChecker invariants;
+  private final boolean deadlocks;
+  private final int maxDepth;
+  private final long maxStates;
+  private final int worker;
+  private final int workers;
+  private final Shared shared;
+
+  private final Set<String> visited = new HashSet<>();
+  // The transition each state was first reached by, to rebuild counterexamples
+  private final Map<String, Transition> parents = new HashMap<>();
+
+  /**
+   * @param maxDepth levels below the initial state to explore, 0 for no limit
+   * @param maxStates distinct states over all workers to stop at, 0 for no limit
+   */
+  BoundedCheck(
+      StateSpace stateSpace,
+      InvariantChecker.Mode invariantMode,
+      boolean deadlocks,
+      int maxDepth,
+      long maxStates,
+      int worker,
+      int workers,
+      Shared shared) {
+    this.stateSpace = stateSpace;
+    this.invariantMode = invariantMode;
+    this.invariants = InvariantChecker.of(stateSpace);
+    this.deadlocks = deadlocks;
+    this.maxDepth = maxDepth;
+    this.maxStates = maxStates;
+    this.worker = worker;
+    this.workers = workers;
+    this.shared = shared;
+  }
+
+  /** Explores until the bounds are reached, the space is exhausted or any worker stops. */
+  void run() {
+    State root = stateSpace.getRoot();
+    List<State> level = List.of(root);
+    visited.add(root.getId());
+    boolean partitioned = workers == 1;
+    count(partitioned);
+
+    for (int depth = 0; !level.isEmpty(); depth++) {
+      if (!partitioned && level.size() >= workers) {
+        List<State> mine = new ArrayList<>();
+        for (int i = worker; i < level.size(); i += workers) {
+          mine.add(level.get(i));
+        }
+        level = mine;
+        partitioned = true;
+      }
+      shared.depth.accumulateAndGet(depth, Math::max);
+      if (maxDepth > 0 && depth >= maxDepth) {
+        shared.depthLimitReached.set(true);
+        return;
+      }
+
+      List<State> next = new ArrayList<>();
+      for (State state : level) {
+        if (shared.stopped()) return;
+        if (!expand(state, next, partitioned)) return;
+      }
+      level = next;
+    }
+  }
+
+  /** Adds the unvisited successors of {@code state} to {@code next}; false on a violation. */
+  private boolean expand(State state, List<State> next, boolean partitioned) {
+    if (!state.isExplored()) {
+      state.explore();
+    }
+    List<Transition> transitions = state.getOutTransitions();
+    if (partitioned || worker == 0) {
+      shared.transitions.addAndGet(transitions.size());
+    }
+    if (transitions.isEmpty() && deadlocks) {
+      report(Kind.deadlock, state, Collections.emptyList());
+      return false;
+    }
+
+    for (Transition transition : transitions) {
+      State destination = transition.getDestination();
+      if (!visited.add(destination.getId())) continue;
+      if (partitioned && workers > 1 && !shared.claimed.add(destination.getStateRep())) continue;
+      parents.put(destination.getId(), transition);
+      count(partitioned);
+
+      List<String> violated = violatedInvariants(destination, transition);
+      if (violated != null) {
+        report(Kind.invariant, destination, violated);
+        return false;
+      }
+      next.add(destination);
+    }
+    return true;
+  }
+
+  /**
+   * Before partitioning every worker sees the same states and transitions, so only the first counts
+   * them.
+   */
+  private void count(boolean partitioned) {
+    if (!partitioned && worker != 0) return;
+    if (shared.states.incrementAndGet() >= maxStates && maxStates > 0) {
+      shared.stateLimitReached.set(true);
+    }
+  }
+
+  /** The violated invariants, empty if unknown, or {@code null} if the invariants hold. */
+  private List<String> violatedInvariants(State state, Transition transition) {
+    try (Metrics.Timer timer = Metrics.time("invariant_check")) {
+      if (invariantMode == InvariantChecker.Mode.prob || invariants == null) {
+        if (state.isInvariantOk()) return null;
+        return invariants != null ? invariants.violated(state) : Collections.emptyList();
+      }
+      List<String> violated = invariants.check(state, transition);
+      return violated.isEmpty() ? null : violated;
+    }
+  }
+
+  private void report(Kind kind, State state, List<String> violated) {
+    Deque<Transition> path = new ArrayDeque<>();
+    Transition t = parents.get(state.getId());
+    while (t != null) {
+      path.addFirst(t);
+      t = parents.get(t.getSource().getId());
+    }
+    Trace trace = new Trace(stateSpace);
+    for (Transition step : path) {
+      trace = trace.add(step);
+    }
+    shared.counterexample.compareAndSet(null, new Counterexample(kind, trace, violated));
+  }
+}
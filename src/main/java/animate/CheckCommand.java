@@ -0,0 +1,171 @@
+package animate;
+
+import de.prob.statespace.StateSpace;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParentCommand;
+
+@Command(
+    name = "check",
+    description =
+        "Explore the state space breadth-first, looking for invariant violations and deadlocks")
+class CheckCommand implements Callable<Integer> {
+
+  @ParentCommand Animate parent;
+
+  @Option(
+      names = {"-d", "--depth"},
+      paramLabel = "<n>",
+      defaultValue = "0",
+      description = "explore at most this many steps from the initial state (default: no limit)")
+  int depth;
+
+  @Option(
+      names = "--max-states",
+      paramLabel = "<n>",
+      defaultValue = "100000",
+      description =
+          "stop after this many distinct states, 0 for no limit (default: ${DEFAULT-VALUE})")
+  long maxStates;
+
+  @Option(names = "--no-deadlock", description = "do not report states without enabled events")
+  boolean noDeadlock;
+
+  @Override
+  public Integer call() {
+    if (depth < 0) {
+      System.err.println("Depth must not be negative, got: " + depth);
+      return 1;
+    }
+    if (maxStates < 0) {
+      System.err.println("Maximum number of states must not be negative, got: " + maxStates);
+      return 1;
+    }
+
+    int workers = parent.jobs;
+    List<StateSpace> stateSpaces = new ArrayList<>();
+    StateSpacePool pool = null;
+    if (workers == 1) {
+      StateSpace stateSpace = parent.initAndLoadModel();
+      if (stateSpace == null) return 1;
+      stateSpaces.add(stateSpace);
+    } else {
+      pool = parent.initAndLoadPool(workers);
+      if (pool == null) return 1;
+      stateSpaces.addAll(pool.all());
+    }
+
+    try {
+      return check(stateSpaces);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.err.println("Error: check interrupted");
+      return 1;
+    } catch (ExecutionException e) {
+      System.err.println("Error checking model: " + e.getCause().getMessage());
+      return 1;
+    } finally {
+      if (pool != null) {
+        parent.releasePool(pool);
+      } else {
+        parent.releaseModel(stateSpaces.get(0));
+      }
+      parent.modelResolver.cleanupTempDir();
+    }
+  }
+
+  private int check(List<StateSpace> stateSpaces)
+      throws InterruptedException, ExecutionException {
+    System.out.println("Checking with " + stateSpaces.size() + " workers.");
+    BoundedCheck.Shared shared = new BoundedCheck.Shared();
+    ExecutorService executor = Executors.newFixedThreadPool(stateSpaces.size());
+    long start = System.nanoTime();
+    List<Future<?>> futures = new ArrayList<>();
+    try {
+      for (int i = 0; i < stateSpaces.size(); i++) {
+        StateSpace stateSpace = stateSpaces.get(i);
+        BoundedCheck check =
+            new BoundedCheck(
+                stateSpace,
+                parent.invariantMode,
+                !noDeadlock,
+                depth,
+                maxStates,
+                i,
+                stateSpaces.size(),
+                shared);
+        futures.add(
+            executor.submit(
+                () -> {
+                  stateSpace.startTransaction();
+                  try {
+                    check.run();
+                  } finally {
+                    stateSpace.endTransaction();
+                  }
+                }));
+      }
+      executor.shutdown();
+      while (!executor.awaitTermination(parent.reportInterval.toMillis(), TimeUnit.MILLISECONDS)) {
+        report(shared, System.nanoTime() - start);
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    report(shared, System.nanoTime() - start);
+
+    BoundedCheck.Counterexample counterexample = shared.counterexample.get();
+    if (counterexample == null) {
+      if (shared.stateLimitReached.get()) {
+        System.out.println("No counterexample found within " + maxStates + " states.");
+      } else if (shared.depthLimitReached.get()) {
+        System.out.println("No counterexample found within depth " + depth + ".");
+      } else {
+        System.out.println("No counterexample found, all reachable states explored.");
+      }
+      return 0;
+    }
+
+    int steps = counterexample.trace().getTransitionList().size();
+    if (counterexample.kind() == BoundedCheck.Kind.deadlock) {
+      System.err.println("Error: deadlock after " + steps + " steps");
+    } else {
+      System.err.println(
+          "Error: invariant violated after "
+              + steps
+              + " steps:\n\t - "
+              + String.join("\n\t - ", counterexample.violatedInvariants()));
+    }
+    if (parent.jsonTrace != null) {
+      parent.saveTrace(counterexample.trace());
+    }
+    return 1;
+  }
+
+  private static void report(BoundedCheck.Shared shared, long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    long states = shared.states.get();
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "[%s] %d states, %d transitions, depth %d, %.0f states/s",
+            SoakRun.formatElapsed(elapsedNanos),
+            states,
+            shared.transitions.get(),
+            shared.depth.get(),
+            seconds > 0 ? states / seconds : 0.0));
+    System.out.flush();
+  }
+}
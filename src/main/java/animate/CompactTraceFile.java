@@ -0,0 +1,451 @@
+package animate;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import de.prob.check.tracereplay.PersistentTransition;
+import de.prob.check.tracereplay.json.storage.TraceJsonFile;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compact, gzip compressed encoding of the JSON traces written by {@code TraceManager}. Field
+ * names, event names and other short strings are written once and then referred to by their index
+ * in a dictionary; string maps such as {@code params} or {@code destState} only carry the values
+ * that differ from the previous transition of the same event. Every other field is kept as JSON
+ * text, so converting back yields the same JSON document.
+ *
+ * <p>Both directions stream: transitions are encoded and decoded one at a time, with memory
+ * bounded by the dictionary and the last maps of each event. Traces are saved from and replayed
+ * into a {@link TraceJsonFile} directly, without going through a JSON file.
+ */
+final class CompactTraceFile {
+
+  static final String EXTENSION = ".animtrace";
+
+  private static final byte[] MAGIC = "ANIMTRC".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  private static final String TRANSITIONS = "transitionList";
+
+  // Longer strings, typically predicates or big set values, are not worth a dictionary entry
+  private static final int MAX_INTERNED_LENGTH = 64;
+  private static final int MAX_DICTIONARY_SIZE = 1 << 20;
+
+  private static final int STRING_LITERAL = 0;
+  private static final int STRING_INTERN = 1;
+  private static final int STRING_REF = 2;
+
+  private static final int VALUE_JSON = 0;
+  private static final int VALUE_STRING = 1;
+  private static final int VALUE_MAP = 2;
+  private static final int VALUE_LIST = 3;
+  private static final int VALUE_NULL = 4;
+
+  private static final int MAP_SAME = 0;
+  private static final int MAP_CHANGED = 1;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private CompactTraceFile() {}
+
+  static boolean isCompact(Path file) {
+    return file.toString().endsWith(EXTENSION);
+  }
+
+  /** Encodes the JSON trace {@code json} into {@code compact}. */
+  static void encode(Path json, Path compact) throws IOException {
+    // First pass: everything but the transitions, which is small and has to come first
+    ObjectNode header = MAPPER.createObjectNode();
+    int transitionsIndex = -1;
+    try (JsonParser parser = MAPPER.getFactory().createParser(json.toFile())) {
+      expect(parser.nextToken(), JsonToken.START_OBJECT, json);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        parser.nextToken();
+        if (TRANSITIONS.equals(field)) {
+          transitionsIndex = header.size();
+          parser.skipChildren();
+        } else {
+          header.set(field, parser.readValueAsTree());
+        }
+      }
+    }
+    if (transitionsIndex < 0) {
+      throw new IOException("Not a trace file, no " + TRANSITIONS + ": " + json);
+    }
+
+    try (JsonParser parser = MAPPER.getFactory().createParser(json.toFile());
+        Writer writer = new Writer(compact, header, transitionsIndex)) {
+      parser.nextToken();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        parser.nextToken();
+        if (!TRANSITIONS.equals(parser.currentName())) {
+          parser.skipChildren();
+          continue;
+        }
+        expect(parser.currentToken(), JsonToken.START_ARRAY, json);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+          writer.write(parser.readValueAsTree());
+        }
+      }
+    }
+  }
+
+  /** Writes {@code trace} to {@code compact} one transition at a time, with no JSON in between. */
+  static void save(TraceJsonFile trace, Path compact) throws IOException {
+    ObjectNode header = MAPPER.valueToTree(trace.changeTrace(List.of()));
+    int transitionsIndex = 0;
+    for (Iterator<String> names = header.fieldNames(); names.hasNext(); transitionsIndex++) {
+      if (TRANSITIONS.equals(names.next())) break;
+    }
+    header.remove(TRANSITIONS);
+    try (Writer writer = new Writer(compact, header, transitionsIndex)) {
+      for (PersistentTransition transition : trace.getTransitionList()) {
+        writer.write(MAPPER.valueToTree(transition));
+      }
+    }
+  }
+
+  /** Decodes {@code compact} into the JSON trace {@code json}. */
+  static void decode(Path compact, Path json) throws IOException {
+    try (InputStream in = Files.newInputStream(compact);
+        JsonGenerator generator =
+            MAPPER.getFactory().createGenerator(json.toFile(), JsonEncoding.UTF8)) {
+      generator.useDefaultPrettyPrinter();
+      Decoder decoder = new Decoder(in, compact);
+      JsonNode header = MAPPER.readTree(decoder.readString());
+      int transitionsIndex = readVarint(decoder.in);
+
+      generator.writeStartObject();
+      Iterator<Map.Entry<String, JsonNode>> fields = header.fields();
+      for (int i = 0; ; i++) {
+        if (i == transitionsIndex) {
+          generator.writeFieldName(TRANSITIONS);
+          decoder.readTransitions(generator);
+        }
+        if (!fields.hasNext()) break;
+        Map.Entry<String, JsonNode> field = fields.next();
+        generator.writeFieldName(field.getKey());
+        generator.writeTree(field.getValue());
+      }
+      generator.writeEndObject();
+    }
+  }
+
+  /**
+   * Reads {@code compact} for replay. The transitions are decoded one at a time straight into the
+   * trace, without a JSON copy of the whole file.
+   */
+  static TraceJsonFile load(Path compact) throws IOException {
+    try (InputStream in = Files.newInputStream(compact)) {
+      Decoder decoder = new Decoder(in, compact);
+      ObjectNode header = (ObjectNode) MAPPER.readTree(decoder.readString());
+      readVarint(decoder.in);
+      header.putArray(TRANSITIONS);
+      TraceJsonFile trace = MAPPER.treeToValue(header, TraceJsonFile.class);
+
+      List<PersistentTransition> transitions = new ArrayList<>();
+      while (true) {
+        TokenBuffer buffer = new TokenBuffer(MAPPER, false);
+        if (!decoder.readTransition(buffer)) break;
+        try (JsonParser parser = buffer.asParser()) {
+          transitions.add(MAPPER.readValue(parser, PersistentTransition.class));
+        }
+      }
+      return trace.changeTrace(transitions);
+    }
+  }
+
+  private static void expect(JsonToken token, JsonToken expected, Path file) throws IOException {
+    if (token != expected) {
+      throw new IOException("Not a trace file, expected " + expected + ": " + file);
+    }
+  }
+
+  /**
+   * Key of the previous map of the same event and field, which a map is encoded against. The event
+   * is the {@code name} field if it comes before the map, as it does in files written by ProB.
+   */
+  private static String deltaKey(String event, String field) {
+    return event + '\0' + field;
+  }
+
+  /** Writes a compact trace: the header first, then the transitions, then the end marker. */
+  private static final class Writer implements Closeable {
+    private final DataOutputStream out;
+    private final Encoder encoder;
+
+    Writer(Path compact, ObjectNode header, int transitionsIndex) throws IOException {
+      out =
+          new DataOutputStream(
+              new BufferedOutputStream(
+                  new GZIPOutputStream(Files.newOutputStream(compact), 1 << 16)));
+      out.write(MAGIC);
+      out.writeByte(VERSION);
+      encoder = new Encoder(out);
+      encoder.writeLiteral(MAPPER.writeValueAsString(header));
+      writeVarint(out, transitionsIndex);
+    }
+
+    void write(ObjectNode transition) throws IOException {
+      encoder.writeTransition(transition);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        writeVarint(out, 0);
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  private static final class Encoder {
+    private final DataOutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final Map<String, Map<String, String>> previous = new HashMap<>();
+
+    Encoder(DataOutputStream out) {
+      this.out = out;
+    }
+
+    void writeTransition(ObjectNode transition) throws IOException {
+      String event = "";
+      writeVarint(out, transition.size() + 1);
+      Iterator<Map.Entry<String, JsonNode>> fields = transition.fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        if ("name".equals(field.getKey()) && field.getValue().isTextual()) {
+          event = field.getValue().textValue();
+        }
+        writeString(field.getKey());
+        writeValue(deltaKey(event, field.getKey()), field.getValue());
+      }
+    }
+
+    private void writeValue(String deltaKey, JsonNode value) throws IOException {
+      if (value.isNull()) {
+        out.writeByte(VALUE_NULL);
+      } else if (value.isTextual()) {
+        out.writeByte(VALUE_STRING);
+        writeString(value.textValue());
+      } else if (isStringContainer(value) && value.isObject()) {
+        out.writeByte(VALUE_MAP);
+        writeMap(deltaKey, value);
+      } else if (isStringContainer(value)) {
+        out.writeByte(VALUE_LIST);
+        writeVarint(out, value.size());
+        for (JsonNode element : value) {
+          writeString(element.textValue());
+        }
+      } else {
+        out.writeByte(VALUE_JSON);
+        writeLiteral(MAPPER.writeValueAsString(value));
+      }
+    }
+
+    private void writeMap(String deltaKey, JsonNode map) throws IOException {
+      Map<String, String> last = previous.getOrDefault(deltaKey, Map.of());
+      Map<String, String> current = new LinkedHashMap<>();
+      writeVarint(out, map.size());
+      Iterator<Map.Entry<String, JsonNode>> entries = map.fields();
+      while (entries.hasNext()) {
+        Map.Entry<String, JsonNode> entry = entries.next();
+        String value = entry.getValue().textValue();
+        writeString(entry.getKey());
+        if (value.equals(last.get(entry.getKey()))) {
+          out.writeByte(MAP_SAME);
+        } else {
+          out.writeByte(MAP_CHANGED);
+          writeString(value);
+        }
+        current.put(entry.getKey(), value);
+      }
+      previous.put(deltaKey, current);
+    }
+
+    private void writeString(String s) throws IOException {
+      Integer index = dictionary.get(s);
+      if (index != null) {
+        writeVarint(out, STRING_REF + index);
+      } else if (s.length() <= MAX_INTERNED_LENGTH && dictionary.size() < MAX_DICTIONARY_SIZE) {
+        dictionary.put(s, dictionary.size());
+        writeVarint(out, STRING_INTERN);
+        writeBytes(s);
+      } else {
+        writeLiteral(s);
+      }
+    }
+
+    void writeLiteral(String s) throws IOException {
+      writeVarint(out, STRING_LITERAL);
+      writeBytes(s);
+    }
+
+    private void writeBytes(String s) throws IOException {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeVarint(out, bytes.length);
+      out.write(bytes);
+    }
+
+    /** Objects and arrays whose values are all strings. */
+    private static boolean isStringContainer(JsonNode node) {
+      if (!node.isContainerNode()) return false;
+      for (JsonNode element : node) {
+        if (!element.isTextual()) return false;
+      }
+      return true;
+    }
+  }
+
+  private static final class Decoder {
+    private final DataInputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Map<String, String>> previous = new HashMap<>();
+
+    /** Checks the magic and the version of {@code raw}, the compact trace {@code source}. */
+    Decoder(InputStream raw, Path source) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(raw, 1 << 16)));
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, MAGIC)) {
+        throw new IOException("Not a compact trace file: " + source);
+      }
+      int version = in.readUnsignedByte();
+      if (version != VERSION) {
+        throw new IOException("Unsupported compact trace version " + version + ": " + source);
+      }
+    }
+
+    void readTransitions(JsonGenerator generator) throws IOException {
+      generator.writeStartArray();
+      while (readTransition(generator)) {
+        generator.flush();
+      }
+      generator.writeEndArray();
+    }
+
+    /** Writes the next transition; returns {@code false} at the end of the list. */
+    boolean readTransition(JsonGenerator generator) throws IOException {
+      int fields = readVarint(in) - 1;
+      if (fields < 0) return false;
+
+      String event = "";
+      generator.writeStartObject();
+      for (int i = 0; i < fields; i++) {
+        String field = readString();
+        generator.writeFieldName(field);
+        int type = in.readUnsignedByte();
+        switch (type) {
+          case VALUE_NULL:
+            generator.writeNull();
+            break;
+          case VALUE_STRING:
+            String value = readString();
+            if ("name".equals(field)) {
+              event = value;
+            }
+            generator.writeString(value);
+            break;
+          case VALUE_MAP:
+            readMap(deltaKey(event, field), generator);
+            break;
+          case VALUE_LIST:
+            int size = readVarint(in);
+            generator.writeStartArray();
+            for (int j = 0; j < size; j++) {
+              generator.writeString(readString());
+            }
+            generator.writeEndArray();
+            break;
+          case VALUE_JSON:
+            generator.writeTree(MAPPER.readTree(readString()));
+            break;
+          default:
+            throw new IOException("Corrupt compact trace, unknown value type " + type);
+        }
+      }
+      generator.writeEndObject();
+      return true;
+    }
+
+    private void readMap(String deltaKey, JsonGenerator generator) throws IOException {
+      Map<String, String> last = previous.getOrDefault(deltaKey, Map.of());
+      Map<String, String> current = new LinkedHashMap<>();
+      int size = readVarint(in);
+      generator.writeStartObject();
+      for (int i = 0; i < size; i++) {
+        String key = readString();
+        String value = in.readUnsignedByte() == MAP_SAME ? last.get(key) : readString();
+        if (value == null) {
+          throw new IOException("Corrupt compact trace, no previous value of " + key);
+        }
+        generator.writeStringField(key, value);
+        current.put(key, value);
+      }
+      generator.writeEndObject();
+      previous.put(deltaKey, current);
+    }
+
+    String readString() throws IOException {
+      int tag = readVarint(in);
+      if (tag >= STRING_REF) {
+        if (tag - STRING_REF >= dictionary.size()) {
+          throw new IOException("Corrupt compact trace, unknown string " + (tag - STRING_REF));
+        }
+        return dictionary.get(tag - STRING_REF);
+      }
+      byte[] bytes = new byte[readVarint(in)];
+      in.readFully(bytes);
+      String s = new String(bytes, StandardCharsets.UTF_8);
+      if (tag == STRING_INTERN) {
+        dictionary.add(s);
+      }
+      return s;
+    }
+  }
+
+  private static void writeVarint(OutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarint(InputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.read();
+      if (b < 0) throw new EOFException("Truncated compact trace");
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw new IOException("Corrupt compact trace, varint too long");
+  }
+}
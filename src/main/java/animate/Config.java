@@ -1,12 +1,64 @@
 package animate;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.util.Modules;
 import de.prob.MainModule;
+import de.prob.cli.ProBInstance;
+import de.prob.cli.ProBInstanceProvider;
 
 public class Config extends AbstractModule {
 
+  /** Number of probcli processes to start ahead of time; unset or 0 starts them on demand. */
+  static final String WARM_POOL_ENV = "ANIMATE_WARM_POOL";
+
+  private final int warmInstances;
+
+  public Config() {
+    this(warmPoolSize(System.getenv(WARM_POOL_ENV)));
+  }
+
+  Config(int warmInstances) {
+    this.warmInstances = warmInstances;
+  }
+
   @Override
   protected void configure() {
-    install(new MainModule()); // Install ProB 2.0 Injection bindings
+    if (warmInstances > 0) {
+      install(Modules.override(new MainModule()).with(new WarmPool(warmInstances)));
+    } else {
+      install(new MainModule()); // Install ProB 2.0 Injection bindings
+    }
+  }
+
+  static int warmPoolSize(String value) {
+    if (value == null || value.isBlank()) return 0;
+    try {
+      return Math.max(0, Integer.parseInt(value.trim()));
+    } catch (NumberFormatException e) {
+      System.err.println("Ignoring " + WARM_POOL_ENV + "=" + value + ", not a number");
+      return 0;
+    }
+  }
+
+  /** Replaces ProB's on-demand probcli processes with {@link WarmProBInstances}. */
+  private static final class WarmPool extends AbstractModule {
+    private final int size;
+
+    WarmPool(int size) {
+      this.size = size;
+    }
+
+    @Override
+    protected void configure() {
+      bind(ProBInstance.class).toProvider(WarmProBInstances.class);
+    }
+
+    @Provides
+    @Singleton
+    WarmProBInstances warmProBInstances(ProBInstanceProvider cold) {
+      return new WarmProBInstances(cold, size);
+    }
   }
 }
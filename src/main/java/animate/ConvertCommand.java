@@ -0,0 +1,60 @@
+package animate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(
+    name = "convert",
+    description = "Convert a trace between json and the compact .animtrace format")
+class ConvertCommand implements Callable<Integer> {
+
+  @Option(
+      names = {"-i", "--input"},
+      required = true,
+      paramLabel = "trace",
+      description = "trace to read, json or .animtrace")
+  Path input;
+
+  @Option(
+      names = {"-o", "--output"},
+      required = true,
+      paramLabel = "trace",
+      description = "trace to write, in the other format")
+  Path output;
+
+  @Override
+  public Integer call() {
+    boolean compact = CompactTraceFile.isCompact(input);
+    if (compact == CompactTraceFile.isCompact(output)) {
+      System.err.println(
+          "Error: exactly one of input and output must end in " + CompactTraceFile.EXTENSION);
+      return 1;
+    }
+
+    try {
+      if (compact) {
+        CompactTraceFile.decode(input, output);
+      } else {
+        CompactTraceFile.encode(input, output);
+      }
+      System.out.println(
+          "Converted "
+              + input
+              + " ("
+              + Files.size(input)
+              + " bytes) to "
+              + output
+              + " ("
+              + Files.size(output)
+              + " bytes)");
+      return 0;
+    } catch (IOException e) {
+      System.err.println("Error converting trace: " + e.getMessage());
+      return 1;
+    }
+  }
+}
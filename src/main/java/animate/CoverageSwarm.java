@@ -0,0 +1,249 @@
+package animate;
+
+import de.prob.statespace.State;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import de.prob.statespace.Transition;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps running random walks on every instance of a {@link StateSpacePool} until no operation is
+ * left uncovered, or a step or time budget runs out.
+ *
+ * <p>Each instance keeps a frontier of traces ending in a state that enables a still uncovered
+ * event. A new walk starts from a random frontier trace when there is one, and from the root
+ * otherwise, so later walks spend their steps near the events that are still missing.
+ */
+class CoverageSwarm {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(CoverageSwarm.class);
+
+  // Bounds the memory held by each instance's frontier
+  private static final int MAX_FRONTIER = 1000;
+
+  private final StateSpacePool pool;
+  private final int steps;
+  private final InvariantChecker.Mode invariantMode;
+  private final WalkStrategy.Kind strategy;
+
+  private final AtomicLong stepsLeft;
+  private final long deadline;
+  private final AtomicInteger walks = new AtomicInteger();
+  private final AtomicLong stepsTaken = new AtomicLong();
+
+  // Operations no instance has covered yet; guarded by this
+  private Set<String> uncovered;
+  private RandomWalk violating;
+
+  /**
+   * @param steps length of a single walk
+   * @param maxSteps total steps over all walks, or 0 for no limit
+   * @param maxSeconds wall-clock limit, or 0 for no limit
+   */
+  CoverageSwarm(
+      StateSpacePool pool,
+      int steps,
+      InvariantChecker.Mode invariantMode,
+      WalkStrategy.Kind strategy,
+      long maxSteps,
+      long maxSeconds) {
+    this.pool = pool;
+    this.steps = steps;
+    this.invariantMode = invariantMode;
+    this.strategy = strategy;
+    this.stepsLeft = new AtomicLong(maxSteps > 0 ? maxSteps : Long.MAX_VALUE);
+    this.deadline =
+        maxSeconds > 0 ? System.nanoTime() + maxSeconds * 1_000_000_000L : Long.MAX_VALUE;
+  }
+
+  /** Runs until the target or a budget is reached; returns whether every operation is covered. */
+  boolean run(long seed) throws InterruptedException, ExecutionException {
+    SplittableRandom seeds = new SplittableRandom(seed);
+    ExecutorService executor = Executors.newFixedThreadPool(pool.all().size());
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < pool.all().size(); i++) {
+        SplittableRandom workerSeeds = seeds.split();
+        futures.add(
+            executor.submit(
+                () -> {
+                  work(workerSeeds);
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return uncovered() != null && uncovered().isEmpty();
+  }
+
+  private void work(SplittableRandom seeds) throws InterruptedException {
+    StateSpace stateSpace = pool.take();
+    try {
+      updateUncovered(stateSpace);
+      List<Trace> frontier = new ArrayList<>();
+      while (!finished()) {
+        long walkSeed = seeds.nextLong();
+        int walkSteps = (int) Math.min(steps, reserveSteps());
+        if (walkSteps <= 0) break;
+
+        Trace start = pickStart(stateSpace, frontier, walkSeed);
+        List<Transition> taken = new ArrayList<>();
+        RandomWalk walk =
+            new RandomWalk(stateSpace, walkSeed, invariantMode, strategy.create(stateSpace));
+        stateSpace.startTransaction();
+        try {
+          walk.run(start, walkSteps, taken::add);
+        } finally {
+          stateSpace.endTransaction();
+        }
+        walks.incrementAndGet();
+        stepsTaken.addAndGet(walk.getStepsTaken());
+        stepsLeft.addAndGet(walkSteps - walk.getStepsTaken());
+
+        if (walk.isInvariantViolated()) {
+          recordViolation(walk);
+          break;
+        }
+        Set<String> stillUncovered = updateUncovered(stateSpace);
+        extendFrontier(frontier, start, taken, stillUncovered, walkSeed);
+      }
+    } finally {
+      pool.release(stateSpace);
+    }
+  }
+
+  /** Takes up to {@code steps} steps from the shared budget. */
+  private long reserveSteps() {
+    while (true) {
+      long left = stepsLeft.get();
+      long reserved = Math.min(left, steps);
+      if (stepsLeft.compareAndSet(left, left - reserved)) {
+        return reserved;
+      }
+    }
+  }
+
+  private Trace pickStart(StateSpace stateSpace, List<Trace> frontier, long seed) {
+    Set<String> missing = uncovered();
+    SplittableRandom random = new SplittableRandom(seed);
+    while (!frontier.isEmpty()) {
+      int i = random.nextInt(frontier.size());
+      Trace candidate = frontier.get(i);
+      if (enablesAny(candidate.getCurrentState(), missing)) {
+        return candidate;
+      }
+      // Its events have been covered since it was added
+      frontier.set(i, frontier.get(frontier.size() - 1));
+      frontier.remove(frontier.size() - 1);
+    }
+    return new Trace(stateSpace);
+  }
+
+  private static void extendFrontier(
+      List<Trace> frontier,
+      Trace start,
+      List<Transition> taken,
+      Set<String> missing,
+      long seed) {
+    SplittableRandom random = new SplittableRandom(~seed);
+    Trace trace = start;
+    for (Transition transition : taken) {
+      trace = trace.add(transition);
+      if (!enablesAny(trace.getCurrentState(), missing)) continue;
+      if (frontier.size() < MAX_FRONTIER) {
+        frontier.add(trace);
+      } else {
+        frontier.set(random.nextInt(MAX_FRONTIER), trace);
+      }
+    }
+  }
+
+  private static boolean enablesAny(State state, Set<String> events) {
+    if (events.isEmpty()) return false;
+    if (!state.isExplored()) {
+      state.explore();
+    }
+    for (Transition transition : state.getOutTransitions()) {
+      if (events.contains(transition.getName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Merges the coverage of {@code stateSpace} and returns a copy of what is still uncovered. */
+  private Set<String> updateUncovered(StateSpace stateSpace) {
+    List<String> instanceUncovered = Animate.computeCoverage(stateSpace).getUncovered();
+    synchronized (this) {
+      int before = uncovered == null ? -1 : uncovered.size();
+      if (uncovered == null) {
+        uncovered = new LinkedHashSet<>(instanceUncovered);
+      } else {
+        uncovered.retainAll(instanceUncovered);
+      }
+      if (uncovered.size() != before) {
+        logger.info("{} operations uncovered after {} walks", uncovered.size(), walks.get());
+      }
+      return new LinkedHashSet<>(uncovered);
+    }
+  }
+
+  private synchronized Set<String> uncovered() {
+    return uncovered == null ? null : new LinkedHashSet<>(uncovered);
+  }
+
+  private synchronized void recordViolation(RandomWalk walk) {
+    if (violating == null) {
+      violating = walk;
+    }
+  }
+
+  private synchronized boolean finished() {
+    return violating != null
+        || (uncovered != null && uncovered.isEmpty())
+        || System.nanoTime() >= deadline
+        || Thread.currentThread().isInterrupted();
+  }
+
+  /** The first walk that violated an invariant, or {@code null}. */
+  synchronized RandomWalk getViolatingWalk() {
+    return violating;
+  }
+
+  void printReport(boolean complete) {
+    System.out.println(
+        (complete ? "Coverage target reached" : "Coverage target not reached")
+            + " after "
+            + walks.get()
+            + " walks and "
+            + stepsTaken.get()
+            + " steps");
+    System.out.println();
+
+    RandomWalk walk = getViolatingWalk();
+    if (walk != null) {
+      System.err.println(
+          "Error: walk with seed "
+              + walk.getSeed()
+              + " violated invariants:\n\t - "
+              + String.join("\n\t - ", walk.getViolatedInvariants()));
+    }
+    ParallelAnimation.printMergedCoverage(pool);
+  }
+}
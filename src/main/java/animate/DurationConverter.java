@@ -0,0 +1,52 @@
+package animate;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import picocli.CommandLine.ITypeConverter;
+import picocli.CommandLine.TypeConversionException;
+
+/** Parses durations such as {@code 90s}, {@code 30m}, {@code 1h30m} or ISO-8601 {@code PT2H}. */
+class DurationConverter implements ITypeConverter<Duration> {
+
+  private static final Pattern PART = Pattern.compile("(\\d+)([dhms])");
+
+  @Override
+  public Duration convert(String value) {
+    String text = value.trim().toLowerCase(Locale.ROOT);
+    if (text.startsWith("p")) {
+      return Duration.parse(value.trim().toUpperCase(Locale.ROOT));
+    }
+    if (text.isEmpty()) {
+      throw new TypeConversionException("Empty duration");
+    }
+
+    Duration duration = Duration.ZERO;
+    Matcher m = PART.matcher(text);
+    int end = 0;
+    while (m.find() && m.start() == end) {
+      long amount = Long.parseLong(m.group(1));
+      switch (m.group(2)) {
+        case "d":
+          duration = duration.plusDays(amount);
+          break;
+        case "h":
+          duration = duration.plusHours(amount);
+          break;
+        case "m":
+          duration = duration.plusMinutes(amount);
+          break;
+        default:
+          duration = duration.plusSeconds(amount);
+          break;
+      }
+      end = m.end();
+    }
+    if (end != text.length()) {
+      throw new TypeConversionException(
+          "Invalid duration '" + value + "', expected e.g. 90s, 30m, 2h or 1h30m");
+    }
+    return duration;
+  }
+}
@@ -0,0 +1,128 @@
+package animate;
+
+import de.prob.model.eventb.Event;
+import de.prob.model.eventb.EventBMachine;
+import de.prob.statespace.State;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Transition;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Which events were enabled in each state a walk went through, taken from the outgoing
+ * transitions the walk computes anyway to choose its next step. Every event has a bitset over the
+ * states in walk order, so recording a state costs one bit per enabled transition.
+ *
+ * <p>States that only enable the setup events are not counted.
+ */
+class EnablingStats {
+
+  private static final String INITIALISATION = "INITIALISATION";
+  // States with a single enabled event listed in the report
+  private static final int NEAR_DEADLOCK_EXAMPLES = 5;
+
+  private final Map<String, BitSet> enabled = new TreeMap<>();
+  private final Set<String> nearDeadlockExamples = new LinkedHashSet<>();
+  private int states;
+  private int nearDeadlocks;
+  private int deadlocks;
+
+  /** Records the events enabled in {@code state}, given its outgoing transitions. */
+  void record(State state, List<Transition> transitions) {
+    if (!transitions.isEmpty() && transitions.get(0).getName().startsWith("$")) return;
+    int events = 0;
+    for (Transition transition : transitions) {
+      BitSet bits = enabled.computeIfAbsent(transition.getName(), name -> new BitSet());
+      if (!bits.get(states)) {
+        bits.set(states);
+        events++;
+      }
+    }
+    if (events == 0) {
+      deadlocks++;
+    } else if (events == 1) {
+      nearDeadlocks++;
+      if (nearDeadlockExamples.size() < NEAR_DEADLOCK_EXAMPLES) {
+        nearDeadlockExamples.add(state.getId());
+      }
+    }
+    states++;
+  }
+
+  /** States recorded, counting a state again each time the walk comes back to it. */
+  int getStates() {
+    return states;
+  }
+
+  /** States with exactly one enabled event. */
+  int getNearDeadlocks() {
+    return nearDeadlocks;
+  }
+
+  /** Recorded states in which {@code event} was enabled. */
+  int timesEnabled(String event) {
+    BitSet bits = enabled.get(event);
+    return bits != null ? bits.cardinality() : 0;
+  }
+
+  /** Those of {@code events} that were not enabled in any recorded state. */
+  List<String> neverEnabled(List<String> events) {
+    List<String> never = new ArrayList<>();
+    for (String event : events) {
+      if (timesEnabled(event) == 0) {
+        never.add(event);
+      }
+    }
+    return never;
+  }
+
+  /** The events of the main machine, without the initialisation, or none if it is unknown. */
+  static List<String> eventNames(StateSpace stateSpace) {
+    List<String> names = new ArrayList<>();
+    if (stateSpace.getMainComponent() instanceof EventBMachine machine) {
+      for (Event event : machine.getEvents()) {
+        if (!event.getName().equals(INITIALISATION)) {
+          names.add(event.getName());
+        }
+      }
+    }
+    return names;
+  }
+
+  void printReport(List<String> events) {
+    System.out.println("Event enabling over " + states + " states:");
+    Set<String> names = new LinkedHashSet<>(events);
+    names.addAll(enabled.keySet());
+    for (String event : names) {
+      int times = timesEnabled(event);
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "\t - %s: %d (%.0f%%)",
+              event,
+              times,
+              states > 0 ? 100.0 * times / states : 0.0));
+    }
+
+    List<String> never = neverEnabled(events);
+    if (!never.isEmpty()) {
+      System.out.println("Never enabled:\n\t - " + String.join("\n\t - ", never));
+    }
+    StringBuilder line =
+        new StringBuilder("States with a single enabled event: ").append(nearDeadlocks);
+    if (!nearDeadlockExamples.isEmpty()) {
+      line.append(" (e.g. ").append(String.join(", ", nearDeadlockExamples)).append(')');
+    }
+    System.out.println(line);
+    if (deadlocks > 0) {
+      System.out.println("Deadlocked states: " + deadlocks);
+    }
+    System.out.println();
+  }
+}
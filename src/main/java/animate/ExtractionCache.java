@@ -0,0 +1,259 @@
+package animate;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of extracted zip archives, keyed by the SHA-256 of the archive. Each entry is a
+ * directory holding the extracted tree and a marker file that records its size; the marker's
+ * modification time is the last use. Once the cache grows past its limit, the least recently used
+ * entries are deleted.
+ *
+ * <p>All changes happen under an exclusive lock on {@code .lock} in the cache root, so concurrent
+ * processes can share one cache. An entry is only published, by an atomic rename, once it is fully
+ * extracted.
+ *
+ * <p>A caller holds a {@link Lease} on the entry it uses, a shared lock on the entry's {@code
+ * .lease} file, until it no longer needs the files. Eviction only deletes an entry whose lease file
+ * it can lock exclusively, so an entry in use by any process stays, even if the cache is then over
+ * its limit.
+ */
+class ExtractionCache {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ExtractionCache.class);
+
+  // System property that moves all caches, e.g. to keep tests out of the user's cache
+  static final String CACHE_PROPERTY = "animate.cache";
+
+  private static final String LOCK_FILE = ".lock";
+  private static final String MARKER_FILE = ".complete";
+  private static final String LEASE_FILE = ".lease";
+  private static final String TREE_DIR = "tree";
+
+  // File locks are held per process, so threads of this JVM must also exclude each other
+  private static final ReentrantLock PROCESS_LOCK = new ReentrantLock();
+
+  // The shared lock this JVM holds on each leased entry, with the number of open leases
+  private static final Map<Path, Holder> HOLDERS = new HashMap<>();
+
+  private static final class Holder {
+    final FileChannel channel;
+    final FileLock lock;
+    int leases;
+
+    Holder(FileChannel channel, FileLock lock) {
+      this.channel = channel;
+      this.lock = lock;
+    }
+  }
+
+  /** A use of a cache entry, which is not evicted until the lease is closed. */
+  static final class Lease implements AutoCloseable {
+    private final Path entry;
+    private boolean closed;
+
+    private Lease(Path entry) {
+      this.entry = entry;
+    }
+
+    /** The extracted contents of the archive. */
+    Path tree() {
+      return entry.resolve(TREE_DIR);
+    }
+
+    @Override
+    public void close() throws IOException {
+      synchronized (HOLDERS) {
+        if (closed) return;
+        closed = true;
+        Holder holder = HOLDERS.get(entry);
+        if (--holder.leases == 0) {
+          HOLDERS.remove(entry);
+          holder.channel.close();
+        }
+      }
+    }
+  }
+
+  private final Path root;
+  private final long maxBytes;
+
+  ExtractionCache(Path root, long maxBytes) {
+    this.root = root;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * The {@code animate.cache} system property if set, else {@code $XDG_CACHE_HOME/animate}, falling
+   * back to {@code ~/.cache/animate}.
+   */
+  static Path defaultRoot() {
+    String override = System.getProperty(CACHE_PROPERTY);
+    if (override != null && !override.isEmpty()) {
+      return Paths.get(override);
+    }
+    String xdg = System.getenv("XDG_CACHE_HOME");
+    Path base =
+        xdg != null && !xdg.isEmpty()
+            ? Paths.get(xdg)
+            : Paths.get(System.getProperty("user.home"), ".cache");
+    return base.resolve("animate");
+  }
+
+  /**
+   * Returns a lease on the extracted contents of {@code archive}, which must be closed once the
+   * files are no longer used.
+   */
+  Lease extract(Path archive) throws IOException {
+    String key = ModelHash.ofFile(archive);
+    Path zipRoot = root.resolve("zip");
+    Files.createDirectories(zipRoot);
+
+    PROCESS_LOCK.lock();
+    try (FileChannel channel =
+            FileChannel.open(
+                zipRoot.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = channel.lock()) {
+      Path entry = zipRoot.resolve(key);
+      Path marker = entry.resolve(MARKER_FILE);
+      if (Files.exists(marker)) {
+        logger.debug("Using cached extraction of {}", archive);
+        Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+        return lease(entry);
+      }
+
+      Path staging = Files.createTempDirectory(zipRoot, key + ".tmp-");
+      try {
+        ModelResolver.unzip(archive, staging.resolve(TREE_DIR));
+        Files.writeString(staging.resolve(MARKER_FILE), Long.toString(sizeOf(staging)));
+        Files.createFile(staging.resolve(LEASE_FILE));
+        deleteRecursively(entry);
+        Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        deleteRecursively(staging);
+        throw e;
+      }
+      logger.debug("Extracted {} into cache entry {}", archive, key);
+
+      Lease lease = lease(entry);
+      evict(zipRoot);
+      return lease;
+    } finally {
+      PROCESS_LOCK.unlock();
+    }
+  }
+
+  private static Lease lease(Path entry) throws IOException {
+    synchronized (HOLDERS) {
+      Holder holder = HOLDERS.get(entry);
+      if (holder == null) {
+        FileChannel channel =
+            FileChannel.open(
+                entry.resolve(LEASE_FILE),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+          holder = new Holder(channel, channel.lock(0, Long.MAX_VALUE, true));
+        } catch (IOException e) {
+          channel.close();
+          throw e;
+        }
+        HOLDERS.put(entry, holder);
+      }
+      holder.leases++;
+      return new Lease(entry);
+    }
+  }
+
+  /** Deletes unfinished entries and then the least recently used ones not leased by anyone. */
+  private void evict(Path zipRoot) throws IOException {
+    List<Path> entries = new ArrayList<>();
+    try (Stream<Path> stream = Files.list(zipRoot)) {
+      stream.filter(Files::isDirectory).forEach(entries::add);
+    }
+
+    long total = 0;
+    List<Path> complete = new ArrayList<>();
+    for (Path entry : entries) {
+      Path marker = entry.resolve(MARKER_FILE);
+      if (!Files.exists(marker)) {
+        deleteRecursively(entry);
+        continue;
+      }
+      total += Long.parseLong(Files.readString(marker, StandardCharsets.UTF_8).trim());
+      complete.add(entry);
+    }
+
+    complete.sort(Comparator.comparing(ExtractionCache::lastUsed));
+    for (Path entry : complete) {
+      if (total <= maxBytes) break;
+      long size = Long.parseLong(Files.readString(entry.resolve(MARKER_FILE)).trim());
+      if (deleteUnleased(entry)) {
+        total -= size;
+      }
+    }
+  }
+
+  /** Deletes {@code entry} unless a lease on it is held by this or another process. */
+  private static boolean deleteUnleased(Path entry) throws IOException {
+    synchronized (HOLDERS) {
+      if (HOLDERS.containsKey(entry)) return false;
+    }
+    try (FileChannel channel =
+        FileChannel.open(
+            entry.resolve(LEASE_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      FileLock lock = channel.tryLock();
+      if (lock == null) {
+        logger.debug("Not evicting cache entry {}, it is in use", entry.getFileName());
+        return false;
+      }
+      logger.debug("Evicting cache entry {}", entry.getFileName());
+      deleteRecursively(entry);
+      return true;
+    }
+  }
+
+  private static FileTime lastUsed(Path entry) {
+    try {
+      return Files.getLastModifiedTime(entry.resolve(MARKER_FILE));
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private static long sizeOf(Path dir) throws IOException {
+    try (Stream<Path> stream = Files.walk(dir)) {
+      long size = 0;
+      for (Path file : (Iterable<Path>) stream.filter(Files::isRegularFile)::iterator) {
+        size += Files.size(file);
+      }
+      return size;
+    }
+  }
+
+  private static void deleteRecursively(Path path) throws IOException {
+    if (Files.exists(path)) {
+      MoreFiles.deleteRecursively(path, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package animate;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import de.prob.scripting.Api;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of the files {@code info} produces, in {@code info/} under the animate cache
+ * directory. Entries are keyed by the content hash of the model together with the selected machine,
+ * the ProB preferences and the ProB version, so any change to the model files misses the cache.
+ * Files are published by an atomic rename, so concurrent runs never see a partly written artefact.
+ *
+ * <p>A cache hit does not start probcli, so the probcli version in the key is the one recorded by
+ * the last run that did; the ProB kernel the tool runs on, which ships probcli, is part of the key
+ * too. Each entry is a directory whose modification time is its last use. Once the cache grows past
+ * its limit, the least recently used entries are deleted under an exclusive lock on {@code .lock}.
+ */
+class InfoCache {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(InfoCache.class);
+
+  // Bumped when the way artefacts are produced changes
+  private static final int VERSION = 2;
+
+  private static final String LOCK_FILE = ".lock";
+  private static final String PROB_VERSION_FILE = ".probcli-version";
+
+  // File locks are held per process, so threads of this JVM must also exclude each other
+  private static final ReentrantLock PROCESS_LOCK = new ReentrantLock();
+
+  private final Path root;
+  private final long maxBytes;
+
+  InfoCache(Path root, long maxBytes) {
+    this.root = root;
+    this.maxBytes = maxBytes;
+  }
+
+  static Path defaultRoot() {
+    return ExtractionCache.defaultRoot().resolve("info");
+  }
+
+  static String key(Path model, String machineName, Map<String, String> prefs, String probVersion)
+      throws IOException {
+    return ModelHash.ofText(
+        VERSION
+            + "|"
+            + ModelHash.of(model)
+            + "|"
+            + machineName
+            + "|"
+            + new TreeMap<>(prefs)
+            + "|"
+            + kernel()
+            + "|"
+            + probVersion);
+  }
+
+  /** Where the ProB kernel was loaded from; its jar name carries the kernel version. */
+  private static String kernel() {
+    CodeSource source = Api.class.getProtectionDomain().getCodeSource();
+    return source != null && source.getLocation() != null ? source.getLocation().toString() : "";
+  }
+
+  /** The probcli version last recorded with {@link #recordProbVersion}, or {@code ""}. */
+  String probVersion() {
+    try {
+      Path file = root.resolve(PROB_VERSION_FILE);
+      return Files.isRegularFile(file) ? Files.readString(file).trim() : "";
+    } catch (IOException e) {
+      logger.debug("Could not read the recorded probcli version", e);
+      return "";
+    }
+  }
+
+  /** Records the version of the probcli that produced the artefacts stored from now on. */
+  void recordProbVersion(String version) throws IOException {
+    Files.createDirectories(root);
+    Path staging = Files.createTempFile(root, PROB_VERSION_FILE, ".tmp");
+    try {
+      Files.writeString(staging, version);
+      Files.move(
+          staging,
+          root.resolve(PROB_VERSION_FILE),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(staging);
+    }
+  }
+
+  /** The cached {@code artefact} of the entry {@code key}, or {@code null}. */
+  Path get(String key, String artefact) {
+    Path entry = root.resolve(key);
+    Path file = entry.resolve(artefact);
+    if (!Files.isRegularFile(file)) return null;
+    logger.info("Using cached {}", artefact);
+    touch(entry);
+    return file;
+  }
+
+  /** Stores a copy of {@code file} as {@code artefact} of the entry {@code key}. */
+  void put(String key, String artefact, Path file) throws IOException {
+    Path entry = Files.createDirectories(root.resolve(key));
+    Path staging = Files.createTempFile(entry, artefact, ".tmp");
+    try {
+      Files.copy(file, staging, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(
+          staging,
+          entry.resolve(artefact),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(staging);
+    }
+    touch(entry);
+    evict(key);
+  }
+
+  private static void touch(Path entry) {
+    try {
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      logger.debug("Could not mark {} as used", entry.getFileName(), e);
+    }
+  }
+
+  /** Deletes the least recently used entries other than {@code keep} while over the limit. */
+  private void evict(String keep) throws IOException {
+    PROCESS_LOCK.lock();
+    try (FileChannel channel =
+            FileChannel.open(
+                root.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = channel.lock()) {
+      List<Path> entries = new ArrayList<>();
+      try (Stream<Path> stream = Files.list(root)) {
+        stream.filter(Files::isDirectory).forEach(entries::add);
+      }
+      long total = 0;
+      for (Path entry : entries) {
+        total += sizeOf(entry);
+      }
+      entries.sort(Comparator.comparing(InfoCache::lastUsed));
+      for (Path entry : entries) {
+        if (total <= maxBytes) break;
+        if (entry.endsWith(keep)) continue;
+        long size = sizeOf(entry);
+        logger.debug("Evicting cached info {}", entry.getFileName());
+        MoreFiles.deleteRecursively(entry, RecursiveDeleteOption.ALLOW_INSECURE);
+        total -= size;
+      }
+    } finally {
+      PROCESS_LOCK.unlock();
+    }
+  }
+
+  private static FileTime lastUsed(Path entry) {
+    try {
+      return Files.getLastModifiedTime(entry);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private static long sizeOf(Path dir) throws IOException {
+    try (Stream<Path> stream = Files.walk(dir)) {
+      long size = 0;
+      for (Path file : (Iterable<Path>) stream.filter(Files::isRegularFile)::iterator) {
+        size += Files.size(file);
+      }
+      return size;
+    }
+  }
+}
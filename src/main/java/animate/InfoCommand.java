@@ -9,9 +9,20 @@ import de.prob.statespace.StateSpace;
 import de.prob.statespace.Trace;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -26,6 +37,9 @@ class InfoCommand implements Callable<Integer> {
   private static final String SETUP_CONSTANTS_EVENT = "$setup_constants";
   private static final String INITIALISE_MACHINE_EVENT = "$initialise_machine";
 
+  private static final String EVENTB_FILE = "model.eventb";
+  private static final String DEPENDENCIES_FILE = "dependencies.txt";
+
   @ParentCommand Animate parent;
 
   @Option(
@@ -58,46 +72,97 @@ class InfoCommand implements Callable<Integer> {
       description = "dump prolog model to .eventb file")
   Path eventb;
 
+  @Option(
+      names = {"-r", "--refinement"},
+      description = "print the refinement graph read from the model files, without loading ProB")
+  boolean refinement;
+
+  @Option(
+      names = "--no-cache",
+      description = "neither read nor write cached artefacts in $XDG_CACHE_HOME/animate/info")
+  boolean noCache;
+
+  @Option(
+      names = "--cache-size",
+      paramLabel = "<MiB>",
+      defaultValue = "256",
+      description = "size limit of the artefact cache in MiB (default: ${DEFAULT-VALUE})")
+  long cacheSize;
+
+  /** A file to produce; {@code cacheName} is its name in the cache entry of the model. */
+  private record Artefact(String name, Path output, String cacheName) {}
+
   @Override
   public Integer call() {
-    int err = 0;
-
-    StateSpace stateSpace = parent.initAndLoadModel();
-    if (stateSpace == null) return 1;
+    if (refinement) {
+      return printRefinement();
+    }
+    parent.initLogging();
+    if (cacheSize <= 0) {
+      System.err.println("Cache size must be positive, got: " + cacheSize);
+      return 1;
+    }
 
+    List<Artefact> graphs = new ArrayList<>();
     try {
-      boolean hasVisualizationCmd =
-          machine != null || events != null || properties != null || invariant != null;
-
-      if (hasVisualizationCmd) {
-        logger.info("Initializing model");
-        stateSpace.startTransaction();
-        Trace trace = new Trace(stateSpace);
+      addGraph(graphs, "machine_hierarchy", machine);
+      addGraph(graphs, "event_hierarchy", events);
+      addGraph(graphs, "properties", properties);
+      addGraph(graphs, "invariant", invariant);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      return 1;
+    }
+    Artefact model = eventb != null ? new Artefact("model", eventb, EVENTB_FILE) : null;
+    boolean printDependencies = graphs.isEmpty() && model == null;
 
-        // Initialize model - some models don't have constants
-        try {
-          trace = trace.execute(SETUP_CONSTANTS_EVENT);
-        } catch (IllegalArgumentException e) {
-          // No constants to set up, continue
-          logger.debug("No setup_constants event available");
-        }
-        try {
-          trace = trace.execute(INITIALISE_MACHINE_EVENT);
-        } catch (Exception e) {
-          System.err.println("Warning: Could not fully initialize model: " + e.getMessage());
-        }
-        stateSpace.endTransaction();
+    InfoCache cache = new InfoCache(InfoCache.defaultRoot(), cacheSize * 1024 * 1024);
+    String key = noCache ? null : cacheKey(cache.probVersion());
+    int err = 0;
 
-        err |= saveVisualization("machine_hierarchy", machine, trace);
-        err |= saveVisualization("event_hierarchy", events, trace);
-        err |= saveVisualization("properties", properties, trace);
-        err |= saveVisualization("invariant", invariant, trace);
+    // Copy what is cached; only the rest needs ProB
+    List<Artefact> missingGraphs = new ArrayList<>();
+    for (Artefact graph : graphs) {
+      if (!restore(cache, key, graph)) missingGraphs.add(graph);
+    }
+    boolean missingModel = model != null && !restore(cache, key, model);
+    String dependencies = null;
+    if (printDependencies && key != null) {
+      Path cached = cache.get(key, DEPENDENCIES_FILE);
+      dependencies = cached != null ? readCached(cached) : null;
+    }
+    if (missingGraphs.isEmpty() && !missingModel && (!printDependencies || dependencies != null)) {
+      if (dependencies != null) {
+        System.out.print(dependencies);
       }
+      return err;
+    }
 
-      if (eventb != null) {
+    int instances = Math.max(1, Math.min(parent.jobs, missingGraphs.size()));
+    List<StateSpace> stateSpaces = new ArrayList<>();
+    StateSpacePool pool = null;
+    if (instances == 1) {
+      StateSpace stateSpace = parent.initAndLoadModel();
+      if (stateSpace == null) return 1;
+      stateSpaces.add(stateSpace);
+    } else {
+      pool = parent.initAndLoadPool(instances);
+      if (pool == null) return 1;
+      stateSpaces.addAll(pool.all());
+    }
+    if (key != null) {
+      key = recordProbVersion(cache, key);
+    }
+
+    try {
+      err |= renderGraphs(stateSpaces, missingGraphs, cache, key);
+
+      StateSpace stateSpace = stateSpaces.get(0);
+      if (missingModel) {
         logger.info("Saving B model to {}", eventb);
         try {
           eventbSave(stateSpace, eventb.toString());
+          store(cache, key, model);
         } catch (IOException e) {
           logger.error("Error saving model", e);
           System.err.println("Error saving model: " + e.getMessage());
@@ -105,32 +170,200 @@ class InfoCommand implements Callable<Integer> {
         }
       }
 
-      if (!hasVisualizationCmd && eventb == null) {
-        EventBModel model = (EventBModel) stateSpace.getModel();
-        System.out.print(model.calculateDependencies().getGraph());
+      if (printDependencies) {
+        EventBModel eventBModel = (EventBModel) stateSpace.getModel();
+        dependencies = eventBModel.calculateDependencies().getGraph().toString();
+        System.out.print(dependencies);
+        storeText(cache, key, DEPENDENCIES_FILE, dependencies);
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.err.println("Error: interrupted");
+      err = 1;
     } finally {
-      stateSpace.kill();
+      if (pool != null) {
+        parent.releasePool(pool);
+      } else {
+        parent.releaseModel(stateSpaces.get(0));
+      }
       parent.modelResolver.cleanupTempDir();
     }
 
     return err;
   }
 
-  private int saveVisualization(String name, Path path, Trace trace) {
-    if (path == null) return 0;
-    logger.info("Saving {} to {}", name, path);
-    DotVisualizationCommand cmd = DotVisualizationCommand.getByName(name, trace);
+  private static void addGraph(List<Artefact> graphs, String name, Path path) {
+    if (path == null) return;
     String extension = MoreFiles.getFileExtension(path);
-    if (extension.equals("dot")) {
-      cmd.visualizeAsDotToFile(path, new ArrayList<>());
-    } else if (extension.equals("svg")) {
-      cmd.visualizeAsSvgToFile(path, new ArrayList<>());
-    } else {
-      System.err.println("Unknown extension " + extension);
+    if (!extension.equals("dot") && !extension.equals("svg")) {
+      throw new IllegalArgumentException("Unknown extension " + extension);
+    }
+    graphs.add(new Artefact(name, path, name + "." + extension));
+  }
+
+  private String cacheKey(String probVersion) {
+    try {
+      parent.validateInput();
+      return InfoCache.key(parent.model, parent.machineName, parent.buildPrefs(), probVersion);
+    } catch (IllegalArgumentException | IOException e) {
+      // Loading the model reports the problem properly
+      logger.debug("Not using the info cache", e);
+      return null;
+    }
+  }
+
+  /**
+   * Records the version of the probcli just started, so that later runs key their lookups by it,
+   * and returns the key the new artefacts are stored under.
+   */
+  private String recordProbVersion(InfoCache cache, String key) {
+    String version = parent.probVersion();
+    if (version == null || version.equals(cache.probVersion())) return key;
+    try {
+      cache.recordProbVersion(version);
+    } catch (IOException e) {
+      logger.warn("Could not record the probcli version", e);
+    }
+    return cacheKey(version);
+  }
+
+  /** Copies a cached artefact to its output; returns whether it was cached. */
+  private static boolean restore(InfoCache cache, String key, Artefact artefact) {
+    Path cached = key != null ? cache.get(key, artefact.cacheName()) : null;
+    if (cached == null) return false;
+    try {
+      Files.copy(cached, artefact.output(), StandardCopyOption.REPLACE_EXISTING);
+      return true;
+    } catch (IOException e) {
+      logger.warn("Could not copy cached {}", artefact.name(), e);
+      return false;
+    }
+  }
+
+  private static String readCached(Path cached) {
+    try {
+      return Files.readString(cached);
+    } catch (IOException e) {
+      logger.warn("Could not read {}", cached, e);
+      return null;
+    }
+  }
+
+  private static void store(InfoCache cache, String key, Artefact artefact) {
+    if (key == null) return;
+    try {
+      cache.put(key, artefact.cacheName(), artefact.output());
+    } catch (IOException e) {
+      logger.warn("Could not cache {}", artefact.name(), e);
+    }
+  }
+
+  private static void storeText(InfoCache cache, String key, String cacheName, String text) {
+    if (key == null) return;
+    try {
+      Path file = Files.createTempFile("animate-info-", ".txt");
+      try {
+        Files.writeString(file, text);
+        cache.put(key, cacheName, file);
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      logger.warn("Could not cache {}", cacheName, e);
+    }
+  }
+
+  /**
+   * Renders the graphs concurrently, one per instance at a time. Each instance is initialised the
+   * first time it is used.
+   */
+  private int renderGraphs(
+      List<StateSpace> stateSpaces, List<Artefact> graphs, InfoCache cache, String key)
+      throws InterruptedException {
+    if (graphs.isEmpty()) return 0;
+    BlockingQueue<StateSpace> idle = new LinkedBlockingQueue<>(stateSpaces);
+    Map<StateSpace, Trace> initialised = new ConcurrentHashMap<>();
+    ExecutorService executor = Executors.newFixedThreadPool(stateSpaces.size());
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (Artefact graph : graphs) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  StateSpace stateSpace = idle.take();
+                  try {
+                    Trace trace = initialised.computeIfAbsent(stateSpace, InfoCommand::initialise);
+                    saveVisualization(graph, trace);
+                    store(cache, key, graph);
+                    return null;
+                  } finally {
+                    idle.add(stateSpace);
+                  }
+                }));
+      }
+
+      int err = 0;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException e) {
+          logger.error("Error saving {}", graphs.get(i).name(), e.getCause());
+          System.err.println(
+              "Error saving " + graphs.get(i).name() + ": " + e.getCause().getMessage());
+          err = 1;
+        }
+      }
+      return err;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Trace initialise(StateSpace stateSpace) {
+    logger.info("Initializing model");
+    stateSpace.startTransaction();
+    Trace trace = new Trace(stateSpace);
+
+    // Initialize model - some models don't have constants
+    try {
+      trace = trace.execute(SETUP_CONSTANTS_EVENT);
+    } catch (IllegalArgumentException e) {
+      // No constants to set up, continue
+      logger.debug("No setup_constants event available");
+    }
+    try {
+      trace = trace.execute(INITIALISE_MACHINE_EVENT);
+    } catch (Exception e) {
+      System.err.println("Warning: Could not fully initialize model: " + e.getMessage());
+    }
+    stateSpace.endTransaction();
+    return trace;
+  }
+
+  private int printRefinement() {
+    parent.initLogging();
+    ModelResolver resolver = parent.modelResolver;
+    parent.configureResolver(resolver);
+    try {
+      parent.validateInput();
+      System.out.print(resolver.scanProject(parent.model).describe());
+      return 0;
+    } catch (IllegalArgumentException | IOException e) {
+      System.err.println("Error reading refinement graph: " + e.getMessage());
       return 1;
+    } finally {
+      resolver.cleanupTempDir();
+    }
+  }
+
+  private static void saveVisualization(Artefact graph, Trace trace) {
+    logger.info("Saving {} to {}", graph.name(), graph.output());
+    DotVisualizationCommand cmd = DotVisualizationCommand.getByName(graph.name(), trace);
+    if (graph.cacheName().endsWith(".dot")) {
+      cmd.visualizeAsDotToFile(graph.output(), new ArrayList<>());
+    } else {
+      cmd.visualizeAsSvgToFile(graph.output(), new ArrayList<>());
     }
-    return 0;
   }
 
   // Same as api.eventb_save, but pretty-printed
@@ -0,0 +1,234 @@
+package animate;
+
+import de.prob.animator.domainobjects.AbstractEvalResult;
+import de.prob.animator.domainobjects.EvalResult;
+import de.prob.animator.domainobjects.IEvalElement;
+import de.prob.model.eventb.Event;
+import de.prob.model.eventb.EventBAction;
+import de.prob.model.eventb.EventBInvariant;
+import de.prob.model.eventb.EventBMachine;
+import de.prob.model.eventb.EventBVariable;
+import de.prob.statespace.State;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Transition;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The invariants of a loaded machine, collected once per {@link StateSpace}, together with the
+ * variables each invariant reads and each event writes.
+ *
+ * <p>In {@link Mode#incremental} mode only the invariants that read a variable written by the last
+ * event are evaluated. That is sound as long as the walk started from a state where all invariants
+ * held, which is the case for walks from the root: the initialisation, and any event whose writes
+ * are unknown, re-checks every invariant. States before the initialisation have no variable values
+ * and are not checked.
+ */
+class InvariantChecker {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(InvariantChecker.class);
+
+  enum Mode {
+    /** Ask ProB whether the state satisfies the invariant, as computed during exploration. */
+    prob,
+    /** Evaluate only the invariants that the last event may have changed. */
+    incremental
+  }
+
+  private static final Map<StateSpace, InvariantChecker> CHECKERS = new WeakHashMap<>();
+
+  private static final Pattern IDENTIFIER = Pattern.compile("\\p{L}[\\p{L}\\p{N}_]*");
+
+  // Assignment operators of Event-B actions, in ASCII and Unicode notation
+  private static final Pattern ASSIGNMENT = Pattern.compile(":=|::|:\\||:∈|:∣|≔");
+
+  private final List<String> names = new ArrayList<>();
+  private final List<IEvalElement> predicates = new ArrayList<>();
+  private final List<Set<String>> reads = new ArrayList<>();
+  private final Map<String, Set<String>> writes = new HashMap<>();
+
+  private volatile boolean timed;
+  private final AtomicLongArray evaluations;
+  private final AtomicLongArray nanos;
+
+  private InvariantChecker(EventBMachine machine) {
+    Set<String> variables = new HashSet<>();
+    for (EventBVariable variable : machine.getVariables()) {
+      variables.add(variable.getName());
+    }
+
+    for (EventBInvariant invariant : machine.getAllInvariants()) {
+      IEvalElement predicate = invariant.getPredicate();
+      names.add(predicate.toString());
+      predicates.add(predicate);
+      Set<String> read = identifiers(predicate.getCode());
+      read.retainAll(variables);
+      reads.add(read);
+    }
+
+    for (Event event : machine.getEvents()) {
+      Set<String> written = new HashSet<>();
+      if (collectWrites(event, written, new HashSet<>())) {
+        written.retainAll(variables);
+        writes.put(event.getName(), written);
+      }
+    }
+
+    evaluations = new AtomicLongArray(predicates.size());
+    nanos = new AtomicLongArray(predicates.size());
+  }
+
+  /** Returns the checker for the main machine of {@code stateSpace}, or {@code null} if none. */
+  static InvariantChecker of(StateSpace stateSpace) {
+    synchronized (CHECKERS) {
+      InvariantChecker checker = CHECKERS.get(stateSpace);
+      if (checker == null) {
+        Object mainComponent = stateSpace.getMainComponent();
+        if (!(mainComponent instanceof EventBMachine)) {
+          logger.warn("Main component is not an EventBMachine: {}", mainComponent);
+          return null;
+        }
+        checker = new InvariantChecker((EventBMachine) mainComponent);
+        logger.debug(
+            "Collected {} invariants and the writes of {} events",
+            checker.predicates.size(),
+            checker.writes.size());
+        CHECKERS.put(stateSpace, checker);
+      }
+      return checker;
+    }
+  }
+
+  /**
+   * Adds the variables assigned by {@code event} and the events it refines. Returns {@code false}
+   * if an action could not be read, in which case the event is treated as writing everything.
+   */
+  private static boolean collectWrites(Event event, Set<String> written, Set<Event> visited) {
+    if (!visited.add(event)) return true;
+    for (EventBAction action : event.getActions()) {
+      String code = action.getCode().getCode();
+      Matcher m = ASSIGNMENT.matcher(code);
+      if (!m.find()) return false;
+      written.addAll(identifiers(code.substring(0, m.start())));
+    }
+    for (Event refined : event.getRefines()) {
+      if (!collectWrites(refined, written, visited)) return false;
+    }
+    return true;
+  }
+
+  private static Set<String> identifiers(String code) {
+    Set<String> result = new HashSet<>();
+    Matcher m = IDENTIFIER.matcher(code);
+    while (m.find()) {
+      result.add(m.group());
+    }
+    return result;
+  }
+
+  /** Collects evaluation counts and times per invariant from now on. */
+  void recordTimings() {
+    timed = true;
+  }
+
+  /**
+   * Evaluates the invariants that may have changed when {@code transition} led to {@code state}
+   * and returns the violated ones. A {@code null} transition checks everything.
+   */
+  List<String> check(State state, Transition transition) {
+    if (!state.isInitialised()) return Collections.emptyList();
+    Set<String> written = transition == null ? null : writes.get(transition.getName());
+    List<Integer> affected = new ArrayList<>();
+    for (int i = 0; i < predicates.size(); i++) {
+      if (written == null || !Collections.disjoint(reads.get(i), written)) {
+        affected.add(i);
+      }
+    }
+    return evaluate(state, affected);
+  }
+
+  /** Evaluates every invariant in {@code state} and returns the violated ones. */
+  List<String> violated(State state) {
+    if (!state.isInitialised()) return Collections.emptyList();
+    List<Integer> all = new ArrayList<>();
+    for (int i = 0; i < predicates.size(); i++) {
+      all.add(i);
+    }
+    return evaluate(state, all);
+  }
+
+  private List<String> evaluate(State state, List<Integer> indices) {
+    if (indices.isEmpty()) return Collections.emptyList();
+
+    List<String> violated = new ArrayList<>();
+    if (timed) {
+      // One call per invariant, so that each can be timed on its own
+      for (int i : indices) {
+        long start = System.nanoTime();
+        AbstractEvalResult result = state.eval(predicates.get(i));
+        nanos.addAndGet(i, System.nanoTime() - start);
+        evaluations.incrementAndGet(i);
+        if (result != EvalResult.TRUE) {
+          violated.add(names.get(i));
+        }
+      }
+      return violated;
+    }
+
+    List<IEvalElement> selected = new ArrayList<>();
+    for (int i : indices) {
+      selected.add(predicates.get(i));
+    }
+    List<AbstractEvalResult> results = state.eval(selected);
+    for (int j = 0; j < results.size(); j++) {
+      if (results.get(j) != EvalResult.TRUE) {
+        violated.add(names.get(indices.get(j)));
+      }
+    }
+    return violated;
+  }
+
+  /** Prints evaluation counts and times per invariant, summed over {@code checkers}. */
+  static void printTimings(Collection<InvariantChecker> checkers) {
+    Map<String, long[]> totals = new HashMap<>();
+    for (InvariantChecker checker : checkers) {
+      if (checker == null) continue;
+      for (int i = 0; i < checker.names.size(); i++) {
+        long[] total = totals.computeIfAbsent(checker.names.get(i), k -> new long[2]);
+        total[0] += checker.evaluations.get(i);
+        total[1] += checker.nanos.get(i);
+      }
+    }
+    if (totals.isEmpty()) return;
+
+    List<Map.Entry<String, long[]>> sorted = new ArrayList<>(totals.entrySet());
+    sorted.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+    System.out.println("Invariant evaluation:");
+    for (Map.Entry<String, long[]> entry : sorted) {
+      long count = entry.getValue()[0];
+      double millis = entry.getValue()[1] / 1e6;
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "\t - %s: %d evaluations, %.2f ms total, %.3f ms avg",
+              entry.getKey(),
+              count,
+              millis,
+              count == 0 ? 0.0 : millis / count));
+    }
+    System.out.println();
+  }
+}
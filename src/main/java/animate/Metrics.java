@@ -0,0 +1,143 @@
+package animate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Wall-clock histograms of the phases of a run, such as model loading or a single step. Recording
+ * is off until {@link #enable} is called, so that timing costs nothing without {@code --metrics}.
+ */
+final class Metrics {
+
+  /** Upper bounds of the histogram buckets, in seconds. */
+  private static final double[] BUCKETS = {
+    0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60
+  };
+
+  private static final Timer NOOP = () -> {};
+
+  private static volatile boolean enabled;
+  private static final Map<String, Histogram> PHASES = new TreeMap<>();
+
+  /** Stops the measurement started by {@link #time}. */
+  interface Timer extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final class Histogram {
+    final long[] counts = new long[BUCKETS.length + 1];
+    long count;
+    double sum;
+    double min = Double.MAX_VALUE;
+    double max;
+
+    void add(double seconds) {
+      int i = 0;
+      while (i < BUCKETS.length && seconds > BUCKETS[i]) i++;
+      counts[i]++;
+      count++;
+      sum += seconds;
+      min = Math.min(min, seconds);
+      max = Math.max(max, seconds);
+    }
+  }
+
+  private Metrics() {}
+
+  /** Starts recording, discarding anything recorded before. */
+  static synchronized void enable() {
+    PHASES.clear();
+    enabled = true;
+  }
+
+  static synchronized void disable() {
+    enabled = false;
+    PHASES.clear();
+  }
+
+  static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Times {@code phase} until the returned timer is closed. */
+  static Timer time(String phase) {
+    if (!enabled) return NOOP;
+    long start = System.nanoTime();
+    return () -> record(phase, System.nanoTime() - start);
+  }
+
+  static void record(String phase, long nanos) {
+    if (!enabled) return;
+    synchronized (Metrics.class) {
+      PHASES.computeIfAbsent(phase, k -> new Histogram()).add(nanos / 1e9);
+    }
+  }
+
+  /** Writes Prometheus text format to a {@code .prom} file and JSON to anything else. */
+  static synchronized void write(Path file) throws IOException {
+    String content = file.toString().endsWith(".prom") ? toPrometheus() : toJson();
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+  }
+
+  private static String toJson() throws IOException {
+    ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    ObjectNode phases = mapper.createObjectNode();
+    for (Map.Entry<String, Histogram> entry : PHASES.entrySet()) {
+      Histogram h = entry.getValue();
+      ObjectNode node = phases.putObject(entry.getKey());
+      node.put("count", h.count);
+      node.put("sumSeconds", h.sum);
+      node.put("minSeconds", h.min);
+      node.put("maxSeconds", h.max);
+      ObjectNode buckets = node.putObject("buckets");
+      long cumulative = 0;
+      for (int i = 0; i < BUCKETS.length; i++) {
+        cumulative += h.counts[i];
+        buckets.put(format(BUCKETS[i]), cumulative);
+      }
+      buckets.put("+Inf", h.count);
+    }
+    ObjectNode root = mapper.createObjectNode();
+    root.set("phases", phases);
+    return mapper.writeValueAsString(root) + "\n";
+  }
+
+  private static String toPrometheus() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("# HELP animate_phase_seconds Time spent in each phase of an animate run\n");
+    sb.append("# TYPE animate_phase_seconds histogram\n");
+    for (Map.Entry<String, Histogram> entry : PHASES.entrySet()) {
+      String phase = entry.getKey();
+      Histogram h = entry.getValue();
+      long cumulative = 0;
+      for (int i = 0; i < BUCKETS.length; i++) {
+        cumulative += h.counts[i];
+        bucket(sb, phase, format(BUCKETS[i]), cumulative);
+      }
+      bucket(sb, phase, "+Inf", h.count);
+      sb.append("animate_phase_seconds_sum{phase=\"").append(phase).append("\"} ");
+      sb.append(format(h.sum)).append('\n');
+      sb.append("animate_phase_seconds_count{phase=\"").append(phase).append("\"} ");
+      sb.append(h.count).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static void bucket(StringBuilder sb, String phase, String le, long count) {
+    sb.append("animate_phase_seconds_bucket{phase=\"").append(phase);
+    sb.append("\",le=\"").append(le).append("\"} ").append(count).append('\n');
+  }
+
+  private static String format(double value) {
+    return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+  }
+}
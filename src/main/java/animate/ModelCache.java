@@ -0,0 +1,134 @@
+package animate;
+
+import de.prob.statespace.StateSpace;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loaded {@link StateSpace}s kept ready for requests of {@code animate serve}. Entries are keyed
+ * by model path, machine, content hash and preferences, so an edited model or a different
+ * preference set is loaded afresh. The least recently used entry is killed once the cache is full.
+ *
+ * <p>A request takes its state space out of the cache and kills it when done, so states explored
+ * by one request never show up in the coverage of the next. A fresh copy is loaded in the
+ * background in the meantime, and a request for a model that is still loading waits for it.
+ */
+class ModelCache implements AutoCloseable {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ModelCache.class);
+
+  record Entry(StateSpace stateSpace, String machineName) {}
+
+  /** Loads a fresh state space of a cached model. */
+  interface Loader {
+    StateSpace load() throws IOException;
+  }
+
+  private final int capacity;
+  private final LinkedHashMap<String, CompletableFuture<Entry>> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private final ExecutorService loader =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread thread = new Thread(r, "model-cache-loader");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  ModelCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  static String key(Path model, String machineName, Map<String, String> prefs)
+      throws IOException {
+    return model.toAbsolutePath().normalize()
+        + "|"
+        + machineName
+        + "|"
+        + ModelHash.of(model)
+        + "|"
+        + new TreeMap<>(prefs);
+  }
+
+  /**
+   * Removes the entry of {@code key} and returns it, waiting if it is still being loaded, or
+   * returns {@code null} if there is none or loading it failed.
+   */
+  Entry take(String key) throws InterruptedException {
+    CompletableFuture<Entry> future;
+    synchronized (this) {
+      future = entries.remove(key);
+    }
+    if (future == null) return null;
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      logger.warn("Reloading cached model failed", e.getCause());
+      return null;
+    }
+  }
+
+  /** Loads a fresh state space for {@code key} in the background. */
+  void reload(String key, String machineName, Loader load) {
+    add(
+        key,
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return new Entry(load.load(), machineName);
+              } catch (IOException e) {
+                throw new IllegalStateException(e);
+              }
+            },
+            loader));
+  }
+
+  private void add(String key, CompletableFuture<Entry> entry) {
+    List<CompletableFuture<Entry>> evicted = new ArrayList<>();
+    synchronized (this) {
+      CompletableFuture<Entry> replaced = entries.put(key, entry);
+      if (replaced != null) {
+        evicted.add(replaced);
+      }
+      Iterator<CompletableFuture<Entry>> it = entries.values().iterator();
+      while (entries.size() > capacity && it.hasNext()) {
+        evicted.add(it.next());
+        it.remove();
+      }
+    }
+    evicted.forEach(
+        future ->
+            future.thenAccept(
+                e -> {
+                  logger.info("Evicting cached model {}", e.machineName());
+                  e.stateSpace().kill();
+                }));
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  @Override
+  public void close() {
+    loader.shutdownNow();
+    List<CompletableFuture<Entry>> all;
+    synchronized (this) {
+      all = new ArrayList<>(entries.values());
+      entries.clear();
+    }
+    all.forEach(future -> future.thenAccept(e -> e.stateSpace().kill()));
+  }
+}
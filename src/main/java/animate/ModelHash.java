@@ -0,0 +1,77 @@
+package animate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** SHA-256 digests of model inputs, used to tell whether a model changed between runs. */
+final class ModelHash {
+
+  private ModelHash() {}
+
+  /**
+   * Hashes everything ProB may read for {@code model}: the whole tree for a directory, the
+   * sibling files of a {@code .bum}, or the file itself otherwise.
+   */
+  static String of(Path model) throws IOException {
+    if (Files.isDirectory(model)) {
+      return ofTree(model, Integer.MAX_VALUE);
+    }
+    if (model.toString().endsWith(".bum")) {
+      Path dir = PathNames.parentDir(model);
+      return ofTree(dir, 1);
+    }
+    return ofFile(model);
+  }
+
+  static String ofFile(Path file) throws IOException {
+    MessageDigest digest = newDigest();
+    update(digest, file);
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  static String ofText(String text) {
+    return HexFormat.of().formatHex(newDigest().digest(text.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static String ofTree(Path root, int depth) throws IOException {
+    List<Path> files;
+    try (Stream<Path> stream = Files.walk(root, depth)) {
+      files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+
+    MessageDigest digest = newDigest();
+    for (Path file : files) {
+      digest.update(root.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      update(digest, file);
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static void update(MessageDigest digest, Path file) throws IOException {
+    byte[] buffer = new byte[8192];
+    try (InputStream in = Files.newInputStream(file)) {
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        digest.update(buffer, 0, n);
+      }
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+}
@@ -4,19 +4,15 @@ import com.google.common.io.MoreFiles;
 import com.google.common.io.RecursiveDeleteOption;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 class ModelResolver {
 
@@ -24,6 +20,17 @@ class ModelResolver {
       (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ModelResolver.class);
 
   private Path tempDir;
+  private final List<ExtractionCache.Lease> leases = new ArrayList<>();
+
+  /**
+   * Extract only the files ProB needs for the selected machine from a zip archive: the unchecked
+   * and checked files of the machine, its abstractions and the contexts they see. Proof files are
+   * left in the archive.
+   */
+  boolean lazyUnzip;
+
+  /** Reuse extracted archives across runs; takes precedence over {@link #lazyUnzip}. */
+  ExtractionCache extractionCache;
 
   Path resolve(Path model) throws IOException {
     return resolve(model, null);
@@ -36,17 +43,35 @@ class ModelResolver {
     if (!model.toString().endsWith(".zip")) {
       return model;
     }
+    try (Metrics.Timer timer = Metrics.time("unzip")) {
+      if (extractionCache != null) {
+        ExtractionCache.Lease lease = extractionCache.extract(model);
+        leases.add(lease);
+        return selectBumFile(findBumFiles(lease.tree()), machineName, "zip archive: " + model);
+      }
+      if (lazyUnzip) {
+        return resolveZipLazily(model, machineName);
+      }
+
+      Path tempDirectory = Files.createTempDirectory("animate-");
+      this.tempDir = tempDirectory;
+      List<Path> bumFiles = unzip(model, tempDirectory);
 
-    Path tempDirectory = Files.createTempDirectory("animate-");
-    this.tempDir = tempDirectory;
+      return selectBumFile(bumFiles, machineName, "zip archive: " + model);
+    }
+  }
+
+  /** Extracts every entry of {@code archive} below {@code target} and returns the .bum files. */
+  static List<Path> unzip(Path archive, Path target) throws IOException {
+    Files.createDirectories(target);
     List<Path> bumFiles = new ArrayList<>();
 
-    try (InputStream fis = Files.newInputStream(model);
+    try (InputStream fis = Files.newInputStream(archive);
         ZipInputStream zis = new ZipInputStream(fis)) {
       ZipEntry entry;
       while ((entry = zis.getNextEntry()) != null) {
-        Path entryPath = tempDirectory.resolve(entry.getName()).normalize();
-        if (!entryPath.startsWith(tempDirectory)) {
+        Path entryPath = target.resolve(entry.getName()).normalize();
+        if (!entryPath.startsWith(target)) {
           throw new IOException("Zip entry outside target directory: " + entry.getName());
         }
         if (entry.isDirectory()) {
@@ -61,19 +86,96 @@ class ModelResolver {
       }
     }
 
-    return selectBumFile(bumFiles, machineName, "zip archive: " + model);
+    return bumFiles;
+  }
+
+  private Path resolveZipLazily(Path model, String machineName) throws IOException {
+    try (FileSystem zip = FileSystems.newFileSystem(model)) {
+      Path root = zip.getPath("/");
+      Path selected = selectBumFile(findBumFiles(root), machineName, "zip archive: " + model);
+      Set<Path> needed = collectDependencies(selected);
+
+      Path tempDirectory = Files.createTempDirectory("animate-");
+      this.tempDir = tempDirectory;
+      int extracted = 0;
+      for (Path file : needed) {
+        if (!Files.isRegularFile(file)) {
+          logger.debug("{} is not in the archive, skipping", file);
+          continue;
+        }
+        Path entryPath = extractedPath(tempDirectory, root, file);
+        Files.createDirectories(entryPath.getParent());
+        Files.copy(file, entryPath);
+        extracted++;
+      }
+      logger.debug("Extracted {} archive entries", extracted);
+      return extractedPath(tempDirectory, root, selected);
+    }
+  }
+
+  /** Where the archive entry {@code file} goes below {@code target}. */
+  private static Path extractedPath(Path target, Path root, Path file) throws IOException {
+    Path entryPath = target.resolve(root.relativize(file).toString()).normalize();
+    if (!entryPath.startsWith(target)) {
+      throw new IOException("Zip entry outside target directory: " + file);
+    }
+    return entryPath;
+  }
+
+  /**
+   * The files the machine {@code machineFile} depends on, in its directory: the machine files of
+   * its refinement chain and the context files of everything they see.
+   */
+  private static Set<Path> collectDependencies(Path machineFile) throws IOException {
+    Path dir = PathNames.parentDir(machineFile);
+    Set<Path> needed = new TreeSet<>();
+    Deque<String> contexts = new ArrayDeque<>();
+    Set<String> visitedMachines = new HashSet<>();
+
+    String current = RefinementGraph.componentName(PathNames.fileName(machineFile));
+    while (current != null && visitedMachines.add(current)) {
+      Path bum = dir.resolve(current + ".bum");
+      needed.add(bum);
+      needed.add(dir.resolve(current + ".bcm"));
+      if (!Files.isRegularFile(bum)) break;
+      try (InputStream in = Files.newInputStream(bum)) {
+        RefinementGraph.Machine read =
+            RefinementGraph.readMachine(in, current, bum.toString(), false);
+        contexts.addAll(read.sees());
+        current = read.refines();
+      }
+    }
+
+    Set<String> visitedContexts = new HashSet<>();
+    while (!contexts.isEmpty()) {
+      String context = contexts.pop();
+      if (!visitedContexts.add(context)) continue;
+      Path buc = dir.resolve(context + ".buc");
+      needed.add(buc);
+      needed.add(dir.resolve(context + ".bcc"));
+      if (!Files.isRegularFile(buc)) continue;
+      try (InputStream in = Files.newInputStream(buc)) {
+        contexts.addAll(RefinementGraph.readContext(in, context, buc.toString()).extended());
+      }
+    }
+    return needed;
   }
 
   private Path resolveDirectory(Path dir, String machineName) throws IOException {
-    List<Path> bumFiles;
+    return selectBumFile(findBumFiles(dir), machineName, "directory: " + dir);
+  }
+
+  /** The .bum files below {@code dir}, sorted so a machine name picks the same file everywhere. */
+  private static List<Path> findBumFiles(Path dir) throws IOException {
     try (var stream = Files.walk(dir)) {
-      bumFiles = stream.filter(p -> p.toString().endsWith(".bum")).collect(Collectors.toList());
+      return stream
+          .filter(p -> p.toString().endsWith(".bum"))
+          .sorted()
+          .collect(Collectors.toList());
     }
-
-    return selectBumFile(bumFiles, machineName, "directory: " + dir);
   }
 
-  private Path selectBumFile(List<Path> bumFiles, String machineName, String source)
+  Path selectBumFile(List<Path> bumFiles, String machineName, String source)
       throws IOException {
     if (bumFiles.isEmpty()) {
       throw new IOException("No .bum file found in " + source);
@@ -94,57 +196,34 @@ class ModelResolver {
       throws IOException {
     String target = machineName + ".bum";
     return bumFiles.stream()
-        .filter(p -> p.getFileName().toString().equals(target))
+        .filter(p -> PathNames.fileName(p).equals(target))
         .findFirst()
         .orElseThrow(() -> new IOException("Machine '" + machineName + "' not found in " + source));
   }
 
   private Path findMostRefinedBum(List<Path> bumFiles, String source) throws IOException {
-    Map<String, String> refinesTarget = new HashMap<>();
-    Map<String, Path> pathByName = new HashMap<>();
-
-    for (Path bumFile : bumFiles) {
-      String fileName = bumFile.getFileName().toString();
-      String machineName = fileName.substring(0, fileName.length() - ".bum".length());
-      pathByName.put(machineName, bumFile);
-
-      try {
-        Document doc =
-            DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(bumFile.toFile());
-        NodeList refines = doc.getElementsByTagName("org.eventb.core.refinesMachine");
-        if (refines.getLength() > 0) {
-          Element refEl = (Element) refines.item(0);
-          String target = refEl.getAttribute("org.eventb.core.target");
-          if (!target.isEmpty()) {
-            refinesTarget.put(machineName, target);
-          }
-        }
-      } catch (ParserConfigurationException | SAXException e) {
-        throw new IOException("Failed to parse .bum file: " + bumFile, e);
-      }
-    }
-
-    Set<String> refinedByOthers = new HashSet<>(refinesTarget.values());
-    List<String> leaves =
-        pathByName.keySet().stream()
-            .filter(name -> !refinedByOthers.contains(name))
-            .collect(Collectors.toList());
+    RefinementGraph graph = RefinementGraph.scan(bumFiles, true);
+    return graph.pathOf(graph.mostRefined(source));
+  }
 
-    if (leaves.isEmpty()) {
-      throw new IOException("Circular refinement detected among .bum files in " + source);
-    }
-    if (leaves.size() > 1) {
-      throw new IOException(
-          "Multiple independent refinement chains found in "
-              + source
-              + ", cannot auto-select. Leaf machines: "
-              + leaves.stream().sorted().collect(Collectors.joining(", ")));
+  /** Reads the refinement graph of the project {@code model} belongs to, without loading it. */
+  RefinementGraph scanProject(Path model) throws IOException {
+    if (Files.isDirectory(model)) {
+      return RefinementGraph.scanDirectory(model);
     }
-
-    return pathByName.get(leaves.get(0));
+    return RefinementGraph.scanDirectory(PathNames.parentDir(resolve(model)));
   }
 
+  /** Deletes the extracted files and releases the cached extractions used since the last call. */
   void cleanupTempDir() {
+    for (ExtractionCache.Lease lease : leases) {
+      try {
+        lease.close();
+      } catch (IOException e) {
+        logger.warn("Failed to release cached extraction", e);
+      }
+    }
+    leases.clear();
     if (tempDir != null) {
       try {
         MoreFiles.deleteRecursively(tempDir, RecursiveDeleteOption.ALLOW_INSECURE);
@@ -0,0 +1,123 @@
+package animate;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Waits for changes to the files of a model. Saving a machine in Rodin writes the unchecked file
+ * and, once the builder has run, the checked files ProB loads, so a change is only reported after
+ * no file has changed for {@link #DEBOUNCE_MILLIS}.
+ */
+class ModelWatcher implements AutoCloseable {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ModelWatcher.class);
+
+  static final long DEBOUNCE_MILLIS = 150;
+
+  private static final List<String> MODEL_FILES = List.of(".bum", ".bcm", ".buc", ".bcc");
+
+  private final WatchService service;
+  private final Path dir;
+  private final boolean recursive;
+
+  /** Watches {@code dir}, and with {@code recursive} the directories below it. */
+  ModelWatcher(Path dir, boolean recursive) throws IOException {
+    this.dir = dir.toAbsolutePath();
+    this.recursive = recursive;
+    this.service = this.dir.getFileSystem().newWatchService();
+    try (var dirs = Files.walk(this.dir, recursive ? Integer.MAX_VALUE : 0)) {
+      for (Path d : dirs.filter(Files::isDirectory).collect(Collectors.toList())) {
+        d.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      }
+    }
+  }
+
+  static boolean isModelFile(Path file) {
+    String name = PathNames.fileName(file);
+    return name.endsWith(".zip") || MODEL_FILES.stream().anyMatch(name::endsWith);
+  }
+
+  /**
+   * The files the selected machine is loaded from: for an archive the archive itself, otherwise the
+   * machine, its abstractions and the contexts they see, unchecked and checked. Any model file
+   * counts if the project cannot be read.
+   */
+  static Predicate<Path> filesOf(Path model, Path resolvedModel) {
+    if (model.toString().endsWith(".zip")) {
+      Path archive = model.toAbsolutePath().normalize();
+      return file -> file.normalize().equals(archive);
+    }
+    if (resolvedModel == null) {
+      return ModelWatcher::isModelFile;
+    }
+    try {
+      RefinementGraph graph = RefinementGraph.scanDirectory(PathNames.parentDir(resolvedModel));
+      String machine = RefinementGraph.componentName(PathNames.fileName(resolvedModel));
+      Set<String> components = new HashSet<>(graph.chain(machine));
+      components.addAll(graph.seenContexts(machine));
+      return file ->
+          isModelFile(file)
+              && components.contains(
+                  RefinementGraph.componentName(PathNames.fileName(file)));
+    } catch (IOException e) {
+      logger.debug("Cannot read the project of {}", resolvedModel, e);
+      return ModelWatcher::isModelFile;
+    }
+  }
+
+  /**
+   * Blocks until one of the {@code relevant} files has changed and the directory has been quiet
+   * for {@link #DEBOUNCE_MILLIS}, then returns the changed files.
+   */
+  Set<Path> awaitChange(Predicate<Path> relevant) throws InterruptedException, IOException {
+    Set<Path> changed = new TreeSet<>();
+    WatchKey key = service.take();
+    while (key != null) {
+      Path watched = (Path) key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          // Events were lost, so anything may have changed
+          changed.add(dir);
+          continue;
+        }
+        Path file = watched.resolve((Path) event.context());
+        if (recursive && event.kind() == ENTRY_CREATE && Files.isDirectory(file)) {
+          file.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        } else if (relevant.test(file)) {
+          changed.add(file);
+        }
+      }
+      if (!key.reset() && watched.equals(dir)) {
+        throw new IOException("Cannot watch " + dir + " any more");
+      }
+      key =
+          changed.isEmpty()
+              ? service.take()
+              : service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    return changed;
+  }
+
+  @Override
+  public void close() throws IOException {
+    service.close();
+  }
+}
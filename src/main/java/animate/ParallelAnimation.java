@@ -0,0 +1,142 @@
+package animate;
+
+import de.prob.animator.command.ComputeCoverageCommand.ComputeCoverageResult;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Spreads independent seeded random walks across the instances of a {@link StateSpacePool}. */
+class ParallelAnimation {
+
+  private final StateSpacePool pool;
+  private final int steps;
+  private final InvariantChecker.Mode invariantMode;
+  private final WalkStrategy.Kind strategy;
+  private final int stallSteps;
+
+  /** @param stallSteps see {@link RandomWalk#setStallSteps} */
+  ParallelAnimation(
+      StateSpacePool pool,
+      int steps,
+      InvariantChecker.Mode invariantMode,
+      WalkStrategy.Kind strategy,
+      int stallSteps) {
+    this.pool = pool;
+    this.steps = steps;
+    this.invariantMode = invariantMode;
+    this.strategy = strategy;
+    this.stallSteps = stallSteps;
+  }
+
+  /**
+   * Runs {@code walks} walks whose seeds are derived from {@code seed}. Results are returned in
+   * walk order, independent of the order in which they finished.
+   */
+  List<RandomWalk> run(int walks, long seed) throws InterruptedException, ExecutionException {
+    SplittableRandom seeds = new SplittableRandom(seed);
+    ExecutorService executor = Executors.newFixedThreadPool(pool.all().size());
+    try {
+      List<Future<RandomWalk>> futures = new ArrayList<>();
+      for (int i = 0; i < walks; i++) {
+        long walkSeed = seeds.nextLong();
+        futures.add(executor.submit(() -> walk(walkSeed)));
+      }
+      List<RandomWalk> results = new ArrayList<>();
+      for (Future<RandomWalk> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private RandomWalk walk(long seed) throws InterruptedException {
+    StateSpace stateSpace = pool.take();
+    try {
+      stateSpace.startTransaction();
+      try {
+        RandomWalk walk =
+            new RandomWalk(stateSpace, seed, invariantMode, strategy.create(stateSpace));
+        walk.setStallSteps(stallSteps);
+        walk.run(new Trace(stateSpace), steps, transition -> {});
+        return walk;
+      } finally {
+        stateSpace.endTransaction();
+      }
+    } finally {
+      pool.release(stateSpace);
+    }
+  }
+
+  void printReport(List<RandomWalk> results) {
+    System.out.println("Walks:");
+    for (int i = 0; i < results.size(); i++) {
+      RandomWalk walk = results.get(i);
+      StringBuilder line = new StringBuilder();
+      line.append("\t - #").append(i).append(" (seed ").append(walk.getSeed()).append("): ");
+      line.append(walk.getStepsTaken()).append(" steps, ");
+      line.append(walk.getDistinctStates()).append(" distinct states");
+      if (walk.getRestarts() > 0) {
+        line.append(", ").append(walk.getRestarts()).append(" restarts");
+      }
+      if (walk.isDeadlocked()) {
+        line.append(", deadlock");
+      }
+      if (walk.isInvariantViolated()) {
+        line.append(", invariant violated");
+      }
+      System.out.println(line);
+    }
+    System.out.println();
+
+    for (int i = 0; i < results.size(); i++) {
+      RandomWalk walk = results.get(i);
+      if (walk.isInvariantViolated()) {
+        System.err.println(
+            "Error: walk #"
+                + i
+                + " violated invariants:\n\t - "
+                + String.join("\n\t - ", walk.getViolatedInvariants()));
+      }
+    }
+
+    printMergedCoverage(pool);
+  }
+
+  /**
+   * An operation counts as covered if any instance covered it, and as uncovered only if no
+   * instance did.
+   */
+  static void printMergedCoverage(StateSpacePool pool) {
+    Set<String> covered = new LinkedHashSet<>();
+    Set<String> uncovered = null;
+    for (StateSpace stateSpace : pool.all()) {
+      ComputeCoverageResult coverage = Animate.computeCoverage(stateSpace);
+      covered.addAll(coverage.getOps());
+      if (uncovered == null) {
+        uncovered = new LinkedHashSet<>(coverage.getUncovered());
+      } else {
+        uncovered.retainAll(coverage.getUncovered());
+      }
+    }
+    if (uncovered != null) {
+      uncovered.removeAll(covered);
+    }
+
+    if (!covered.isEmpty()) {
+      System.out.println("Covered operations:\n\t - " + String.join("\n\t - ", covered));
+    }
+    if (uncovered != null && !uncovered.isEmpty()) {
+      System.out.println("Uncovered operations:\n\t - " + String.join("\n\t - ", uncovered));
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package animate;
+
+import java.nio.file.Path;
+
+/**
+ * File names and parent directories of paths given on the command line. {@link Path#getFileName}
+ * and {@link Path#getParent} return {@code null} for a root, which is reported here instead of
+ * failing later with a {@link NullPointerException}.
+ */
+final class PathNames {
+
+  private PathNames() {}
+
+  /** The last element of {@code path}. */
+  static String fileName(Path path) {
+    Path name = path.getFileName();
+    if (name == null) {
+      throw new IllegalArgumentException("Expected a file, got: " + path);
+    }
+    return name.toString();
+  }
+
+  /** The directory containing {@code path}, resolved against the working directory. */
+  static Path parentDir(Path path) {
+    Path parent = path.toAbsolutePath().getParent();
+    if (parent == null) {
+      throw new IllegalArgumentException("Expected a file, got: " + path);
+    }
+    return parent;
+  }
+}
@@ -0,0 +1,157 @@
+package animate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Named sets of ProB preferences. Every profile is applied on top of {@code default}, the
+ * preferences animate has always loaded models with. Besides the built-in profiles, a JSON file
+ * can define more, and record which profile suits a model best:
+ *
+ * <pre>
+ * {
+ *   "profiles": { "no-symmetry": { "SYMMETRY_MODE": "off" } },
+ *   "models": { "/path/to/model.bum": "fast-walk" }
+ * }
+ * </pre>
+ */
+class PrefProfiles {
+
+  static final String DEFAULT = "default";
+
+  private static final Map<String, Map<String, String>> BUILT_IN = new LinkedHashMap<>();
+
+  static {
+    Map<String, String> defaults = new LinkedHashMap<>();
+    defaults.put("MEMOIZE_FUNCTIONS", "true");
+    defaults.put("SYMBOLIC", "true");
+    defaults.put("TRACE_INFO", "true");
+    defaults.put("TRY_FIND_ABORT", "true");
+    defaults.put("SYMMETRY_MODE", "hash");
+    defaults.put("COMPRESSION", "true");
+    defaults.put("CLPFD", "true");
+    defaults.put("PROOF_INFO", "true");
+    defaults.put("OPERATION_REUSE", "true");
+    BUILT_IN.put(DEFAULT, defaults);
+    // A walk rarely comes back to a state, so storing states compactly does not pay off
+    BUILT_IN.put(
+        "fast-walk", Map.of("COMPRESSION", "false", "SYMMETRY_MODE", "off", "TRACE_INFO", "false"));
+    BUILT_IN.put(
+        "low-memory",
+        Map.of("COMPRESSION", "true", "MEMOIZE_FUNCTIONS", "false", "OPERATION_REUSE", "false"));
+    // Exhaustive exploration revisits states and events over and over
+    BUILT_IN.put(
+        "deep-check",
+        Map.of("COMPRESSION", "true", "SYMMETRY_MODE", "hash", "OPERATION_REUSE", "full"));
+  }
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  // System property that replaces the default profiles file, e.g. so tests ignore the user's
+  static final String PROFILES_PROPERTY = "animate.profiles";
+
+  private final Map<String, Map<String, String>> profiles = new LinkedHashMap<>(BUILT_IN);
+  private final Map<String, String> models = new LinkedHashMap<>();
+
+  /**
+   * The {@code animate.profiles} system property if set, else {@code
+   * $XDG_CONFIG_HOME/animate/profiles.json}, or under {@code ~/.config}.
+   */
+  static Path defaultFile() {
+    String override = System.getProperty(PROFILES_PROPERTY);
+    if (override != null && !override.isEmpty()) {
+      return Paths.get(override);
+    }
+    String xdg = System.getenv("XDG_CONFIG_HOME");
+    Path base =
+        xdg != null && !xdg.isEmpty()
+            ? Paths.get(xdg)
+            : Paths.get(System.getProperty("user.home"), ".config");
+    return base.resolve("animate").resolve("profiles.json");
+  }
+
+  /** The built-in profiles, and those of {@code file} if it exists. */
+  static PrefProfiles load(Path file) throws IOException {
+    PrefProfiles result = new PrefProfiles();
+    if (file == null || !Files.exists(file)) return result;
+
+    JsonNode root = mapper.readTree(file.toFile());
+    Iterator<Map.Entry<String, JsonNode>> profiles = root.path("profiles").fields();
+    while (profiles.hasNext()) {
+      Map.Entry<String, JsonNode> profile = profiles.next();
+      Map<String, String> prefs = new LinkedHashMap<>();
+      profile
+          .getValue()
+          .fields()
+          .forEachRemaining(e -> prefs.put(e.getKey(), e.getValue().asText()));
+      result.profiles.put(profile.getKey(), prefs);
+    }
+    root.path("models")
+        .fields()
+        .forEachRemaining(e -> result.models.put(e.getKey(), e.getValue().asText()));
+    return result;
+  }
+
+  /** How a model is recorded in the file: its absolute path, and the machine if one was chosen. */
+  static String modelKey(Path model, String machineName) {
+    String path = model.toAbsolutePath().normalize().toString();
+    return machineName != null ? path + "#" + machineName : path;
+  }
+
+  Set<String> names() {
+    return new LinkedHashSet<>(profiles.keySet());
+  }
+
+  /** The profile recorded for a model, or {@code null}. */
+  String profileFor(String modelKey) {
+    return models.get(modelKey);
+  }
+
+  /** The default preferences overridden by those of the profile. */
+  Map<String, String> prefs(String name) {
+    Map<String, String> profile = profiles.get(name);
+    if (profile == null) {
+      throw new IllegalArgumentException(
+          "Unknown profile: " + name + ", expected one of " + String.join(", ", names()));
+    }
+    Map<String, String> prefs = new LinkedHashMap<>(BUILT_IN.get(DEFAULT));
+    prefs.putAll(profile);
+    return prefs;
+  }
+
+  /**
+   * Records {@code profile} as the best one for a model in {@code file}, keeping everything else
+   * the file holds.
+   */
+  static void recordBest(Path file, String modelKey, String profile) throws IOException {
+    ObjectNode root = mapper.createObjectNode();
+    if (Files.exists(file)) {
+      root = (ObjectNode) mapper.readTree(file.toFile());
+    }
+    ObjectNode models =
+        root.path("models").isObject() ? (ObjectNode) root.get("models") : root.putObject("models");
+    models.put(modelKey, profile);
+
+    Path dir = PathNames.parentDir(file);
+    Files.createDirectories(dir);
+    Path staging = Files.createTempFile(dir, "profiles-", ".tmp");
+    try {
+      mapper.writerWithDefaultPrettyPrinter().writeValue(staging.toFile(), root);
+      Files.move(
+          staging, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(staging);
+    }
+  }
+}
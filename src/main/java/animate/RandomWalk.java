@@ -0,0 +1,165 @@
+package animate;
+
+import de.prob.statespace.State;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import de.prob.statespace.Transition;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** One seeded random walk over a loaded {@link StateSpace}. */
+class RandomWalk {
+
+  /** Receives every transition as soon as the walk executes it. */
+  interface StepListener {
+    void onStep(Transition transition);
+  }
+
+  private final StateSpace stateSpace;
+  private final long seed;
+  private final Random random;
+  private final InvariantChecker.Mode invariantMode;
+  private final InvariantChecker invariants;
+  private final WalkStrategy strategy;
+
+  private final VisitedStates visited = new VisitedStates();
+  private int stallSteps;
+  private EnablingStats enabling;
+
+  private Trace trace;
+  private int stepsTaken;
+  private int restarts;
+  private boolean deadlocked;
+  private boolean invariantViolated;
+  private List<String> violatedInvariants = Collections.emptyList();
+
+  /** With a {@code null} {@code invariantMode}, invariants are not checked. */
+  RandomWalk(
+      StateSpace stateSpace,
+      long seed,
+      InvariantChecker.Mode invariantMode,
+      WalkStrategy strategy) {
+    this.stateSpace = stateSpace;
+    this.seed = seed;
+    this.random = new Random(seed);
+    this.invariantMode = invariantMode;
+    this.invariants = invariantMode != null ? InvariantChecker.of(stateSpace) : null;
+    this.strategy = strategy;
+  }
+
+  /**
+   * Restarts the walk from the initial state once {@code steps} consecutive steps have not reached
+   * a state the walk has not visited before; 0 never restarts. The returned trace then starts at
+   * the last restart.
+   */
+  void setStallSteps(int steps) {
+    this.stallSteps = steps;
+  }
+
+  /** Records the events enabled in every state the walk chooses a step in. */
+  void setEnablingStats(EnablingStats enabling) {
+    this.enabling = enabling;
+  }
+
+  /**
+   * Executes up to {@code steps} transitions chosen by the strategy, starting from {@code start}.
+   * The walk stops early on a deadlock or, when invariant checking is enabled, on the first
+   * violation.
+   */
+  Trace run(Trace start, int steps, StepListener listener) {
+    trace = start;
+    visited.add(start.getCurrentState().getId());
+    int sinceNewState = 0;
+    for (int i = 0; i < steps; i++) {
+      State current = trace.getCurrentState();
+      if (!current.isExplored()) {
+        current.explore();
+      }
+      List<Transition> transitions = current.getOutTransitions();
+      if (enabling != null) {
+        enabling.record(current, transitions);
+      }
+      if (transitions.isEmpty()) {
+        deadlocked = true;
+        break;
+      }
+      Transition transition;
+      try (Metrics.Timer timer = Metrics.time("step")) {
+        transition = strategy.choose(current, transitions, random);
+        trace = trace.add(transition);
+      }
+      stepsTaken++;
+      strategy.onStep(transition);
+      listener.onStep(transition);
+
+      if (invariantMode != null && !invariantsHold(transition)) {
+        invariantViolated = true;
+        break;
+      }
+
+      sinceNewState = visited.add(transition.getDestination().getId()) ? 0 : sinceNewState + 1;
+      if (stallSteps > 0 && sinceNewState >= stallSteps) {
+        trace = new Trace(stateSpace);
+        restarts++;
+        sinceNewState = 0;
+      }
+    }
+    return trace;
+  }
+
+  private boolean invariantsHold(Transition transition) {
+    try (Metrics.Timer timer = Metrics.time("invariant_check")) {
+      return invariantsHold(trace.getCurrentState(), transition);
+    }
+  }
+
+  private boolean invariantsHold(State state, Transition transition) {
+    if (invariantMode == InvariantChecker.Mode.prob || invariants == null) {
+      if (state.isInvariantOk()) return true;
+      violatedInvariants =
+          invariants != null ? invariants.violated(state) : Collections.emptyList();
+      return false;
+    }
+    violatedInvariants = invariants.check(state, transition);
+    return violatedInvariants.isEmpty();
+  }
+
+  long getSeed() {
+    return seed;
+  }
+
+  Trace getTrace() {
+    return trace;
+  }
+
+  int getStepsTaken() {
+    return stepsTaken;
+  }
+
+  /** Distinct states the walk has been in, including the one it started from. */
+  int getDistinctStates() {
+    return visited.size();
+  }
+
+  int getRestarts() {
+    return restarts;
+  }
+
+  /** The enabling statistics, or {@code null} if none were recorded. */
+  EnablingStats getEnablingStats() {
+    return enabling;
+  }
+
+  boolean isDeadlocked() {
+    return deadlocked;
+  }
+
+  boolean isInvariantViolated() {
+    return invariantViolated;
+  }
+
+  List<String> getViolatedInvariants() {
+    return violatedInvariants;
+  }
+}
@@ -0,0 +1,417 @@
+package animate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The refinement DAG of a Rodin project: which machine refines which, and which contexts the
+ * machines see and the contexts extend, down to the events and their refinement. It is read from
+ * the unchecked {@code .bum} and {@code .buc} files with a streaming parser that only looks at
+ * the top-level clauses of each file and the clauses of events.
+ */
+final class RefinementGraph {
+
+  private static final String REFINES_MACHINE = "org.eventb.core.refinesMachine";
+  private static final String SEES_CONTEXT = "org.eventb.core.seesContext";
+  private static final String EXTENDS_CONTEXT = "org.eventb.core.extendsContext";
+  private static final String TARGET = "org.eventb.core.target";
+  private static final String VARIABLE = "org.eventb.core.variable";
+  private static final String CONSTANT = "org.eventb.core.constant";
+  private static final String EVENT = "org.eventb.core.event";
+  private static final String REFINES_EVENT = "org.eventb.core.refinesEvent";
+  private static final String PARAMETER = "org.eventb.core.parameter";
+  private static final String IDENTIFIER = "org.eventb.core.identifier";
+  private static final String LABEL = "org.eventb.core.label";
+  private static final String EXTENDED = "org.eventb.core.extended";
+
+  private static final ThreadLocal<XMLInputFactory> FACTORY =
+      ThreadLocal.withInitial(
+          () -> {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            return factory;
+          });
+
+  /**
+   * A machine with the machine it refines ({@code null} for none) and the contexts it sees. The
+   * variables and events are only read when the whole file is.
+   */
+  record Machine(
+      String name, String refines, List<String> sees, List<String> variables, List<Event> events) {
+
+    Machine(String name, String refines, List<String> sees) {
+      this(name, refines, sees, List.of(), List.of());
+    }
+  }
+
+  /**
+   * An event with the abstract events it refines, none for a new event, and its own parameters;
+   * an extended event also has the parameters of the event it refines.
+   */
+  record Event(String name, boolean extended, List<String> refines, List<String> parameters) {}
+
+  /** A context with the contexts it extends and the constants it declares. */
+  record Context(String name, List<String> extended, List<String> constants) {
+
+    Context(String name, List<String> extended) {
+      this(name, extended, List.of());
+    }
+  }
+
+  private final Map<String, Machine> machines;
+  private final Map<String, Context> contexts;
+  private final Map<String, Path> paths;
+
+  private RefinementGraph(
+      Map<String, Machine> machines, Map<String, Context> contexts, Map<String, Path> paths) {
+    this.machines = machines;
+    this.contexts = contexts;
+    this.paths = paths;
+  }
+
+  /**
+   * Scans {@code .bum} and {@code .buc} files in parallel. With {@code refinesOnly}, a machine file
+   * is only read up to its refines clause and the seen contexts, variables and events are not
+   * collected.
+   */
+  static RefinementGraph scan(Collection<Path> files, boolean refinesOnly) throws IOException {
+    List<Object> components;
+    try {
+      components =
+          files.parallelStream()
+              .map(
+                  file -> {
+                    try (InputStream in = Files.newInputStream(file)) {
+                      String name = componentName(PathNames.fileName(file));
+                      return file.toString().endsWith(".buc")
+                          ? readContext(in, name, file.toString())
+                          : readMachine(in, name, file.toString(), refinesOnly);
+                    } catch (IOException e) {
+                      throw new UncheckedIOException(e);
+                    }
+                  })
+              .collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    Map<String, Machine> machines = new TreeMap<>();
+    Map<String, Context> contexts = new TreeMap<>();
+    Map<String, Path> paths = new HashMap<>();
+    int i = 0;
+    for (Path file : files) {
+      Object component = components.get(i++);
+      if (component instanceof Machine machine) {
+        machines.put(machine.name(), machine);
+        paths.put(machine.name(), file);
+      } else if (component instanceof Context context) {
+        contexts.put(context.name(), context);
+        paths.put(context.name(), file);
+      }
+    }
+    return new RefinementGraph(machines, contexts, paths);
+  }
+
+  /** Builds a graph from components read elsewhere, e.g. from the entries of an archive. */
+  static RefinementGraph of(Collection<Machine> machines, Collection<Context> contexts) {
+    Map<String, Machine> machineMap = new TreeMap<>();
+    machines.forEach(m -> machineMap.put(m.name(), m));
+    Map<String, Context> contextMap = new TreeMap<>();
+    contexts.forEach(c -> contextMap.put(c.name(), c));
+    return new RefinementGraph(machineMap, contextMap, new HashMap<>());
+  }
+
+  /** Scans every machine and context below {@code dir}. */
+  static RefinementGraph scanDirectory(Path dir) throws IOException {
+    List<Path> files;
+    try (var stream = Files.walk(dir)) {
+      files =
+          stream
+              .filter(p -> p.toString().endsWith(".bum") || p.toString().endsWith(".buc"))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    return scan(files, false);
+  }
+
+  static String componentName(String fileName) {
+    int dot = fileName.lastIndexOf('.');
+    return dot < 0 ? fileName : fileName.substring(0, dot);
+  }
+
+  static Machine readMachine(InputStream in, String name, String source, boolean refinesOnly)
+      throws IOException {
+    String refines = null;
+    List<String> sees = new ArrayList<>();
+    List<String> variables = new ArrayList<>();
+    List<Event> events = new ArrayList<>();
+    try {
+      XMLStreamReader reader = FACTORY.get().createXMLStreamReader(in);
+      try {
+        while (nextClause(reader)) {
+          String element = reader.getLocalName();
+          if (element.equals(REFINES_MACHINE)) {
+            refines = emptyToNull(reader.getAttributeValue(null, TARGET));
+            if (refinesOnly) break;
+          } else if (refinesOnly) {
+            continue;
+          } else if (element.equals(SEES_CONTEXT)) {
+            addTarget(reader, sees);
+          } else if (element.equals(VARIABLE)) {
+            addIdentifier(reader, variables);
+          } else if (element.equals(EVENT)) {
+            events.add(readEvent(reader));
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to parse .bum file: " + source, e);
+    }
+    return new Machine(name, refines, sees, variables, events);
+  }
+
+  /** Reads the clauses of the event the reader is on, leaving it on the end of the event. */
+  private static Event readEvent(XMLStreamReader reader) throws XMLStreamException {
+    String label = reader.getAttributeValue(null, LABEL);
+    boolean extended = "true".equals(reader.getAttributeValue(null, EXTENDED));
+    List<String> refines = new ArrayList<>();
+    List<String> parameters = new ArrayList<>();
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        if (depth == 2 && reader.getLocalName().equals(REFINES_EVENT)) {
+          addTarget(reader, refines);
+        } else if (depth == 2 && reader.getLocalName().equals(PARAMETER)) {
+          addIdentifier(reader, parameters);
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+    return new Event(label, extended, refines, parameters);
+  }
+
+  static Context readContext(InputStream in, String name, String source) throws IOException {
+    List<String> extended = new ArrayList<>();
+    List<String> constants = new ArrayList<>();
+    try {
+      XMLStreamReader reader = FACTORY.get().createXMLStreamReader(in);
+      try {
+        while (nextClause(reader)) {
+          if (reader.getLocalName().equals(EXTENDS_CONTEXT)) {
+            addTarget(reader, extended);
+          } else if (reader.getLocalName().equals(CONSTANT)) {
+            addIdentifier(reader, constants);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to parse .buc file: " + source, e);
+    }
+    return new Context(name, extended, constants);
+  }
+
+  /**
+   * Advances to the next child element of the root element, skipping everything nested deeper.
+   * Returns {@code false} at the end of the document.
+   */
+  private static boolean nextClause(XMLStreamReader reader) throws XMLStreamException {
+    // The reader is before the root element, or on the start or the end of the previous clause
+    int depth =
+        switch (reader.getEventType()) {
+          case XMLStreamConstants.START_ELEMENT -> 2;
+          case XMLStreamConstants.END_ELEMENT -> 1;
+          default -> 0;
+        };
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+        if (depth == 2) {
+          return true;
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+    return false;
+  }
+
+  private static void addTarget(XMLStreamReader reader, List<String> targets) {
+    String target = emptyToNull(reader.getAttributeValue(null, TARGET));
+    if (target != null) {
+      targets.add(target);
+    }
+  }
+
+  private static void addIdentifier(XMLStreamReader reader, List<String> identifiers) {
+    String identifier = emptyToNull(reader.getAttributeValue(null, IDENTIFIER));
+    if (identifier != null) {
+      identifiers.add(identifier);
+    }
+  }
+
+  private static String emptyToNull(String s) {
+    return s == null || s.isEmpty() ? null : s;
+  }
+
+  Set<String> machineNames() {
+    return Collections.unmodifiableSet(machines.keySet());
+  }
+
+  Machine machine(String name) {
+    return machines.get(name);
+  }
+
+  Path pathOf(String component) {
+    return paths.get(component);
+  }
+
+  /** The event {@code name} of {@code machine}, or {@code null}. */
+  Event event(String machine, String name) {
+    Machine m = machines.get(machine);
+    if (m == null) return null;
+    for (Event event : m.events()) {
+      if (event.name().equals(name)) return event;
+    }
+    return null;
+  }
+
+  /** The parameters of an event, including those an extended event inherits. */
+  Set<String> parametersOf(String machine, String name) {
+    Set<String> parameters = new LinkedHashSet<>();
+    Set<String> seen = new HashSet<>();
+    String current = machine;
+    Event event = event(machine, name);
+    while (event != null && seen.add(current)) {
+      parameters.addAll(event.parameters());
+      if (!event.extended()) break;
+      current = machines.get(current).refines();
+      String refined = event.refines().isEmpty() ? event.name() : event.refines().get(0);
+      event = current != null ? event(current, refined) : null;
+    }
+    return parameters;
+  }
+
+  /** The constants of all contexts seen by the refinement chain of {@code machine}. */
+  Set<String> constantsOf(String machine) {
+    Set<String> constants = new LinkedHashSet<>();
+    for (String context : seenContexts(machine)) {
+      Context c = contexts.get(context);
+      if (c != null) {
+        constants.addAll(c.constants());
+      }
+    }
+    return constants;
+  }
+
+  /** Returns the only machine that no other machine refines. */
+  String mostRefined(String source) throws IOException {
+    Set<String> refinedByOthers =
+        machines.values().stream()
+            .map(Machine::refines)
+            .filter(r -> r != null)
+            .collect(Collectors.toSet());
+    List<String> leaves =
+        machines.keySet().stream()
+            .filter(name -> !refinedByOthers.contains(name))
+            .collect(Collectors.toList());
+
+    if (leaves.isEmpty()) {
+      throw new IOException("Circular refinement detected among .bum files in " + source);
+    }
+    if (leaves.size() > 1) {
+      throw new IOException(
+          "Multiple independent refinement chains found in "
+              + source
+              + ", cannot auto-select. Leaf machines: "
+              + String.join(", ", leaves));
+    }
+    return leaves.get(0);
+  }
+
+  /** The machine followed by its abstractions, most abstract last. */
+  List<String> chain(String machine) {
+    List<String> chain = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    String current = machine;
+    while (current != null && seen.add(current)) {
+      chain.add(current);
+      Machine m = machines.get(current);
+      current = m != null ? m.refines() : null;
+    }
+    return chain;
+  }
+
+  /** All contexts seen by the refinement chain of {@code machine}, including extended ones. */
+  Set<String> seenContexts(String machine) {
+    Deque<String> pending = new ArrayDeque<>();
+    for (String name : chain(machine)) {
+      Machine m = machines.get(name);
+      if (m != null) {
+        pending.addAll(m.sees());
+      }
+    }
+    Set<String> seen = new LinkedHashSet<>();
+    while (!pending.isEmpty()) {
+      String context = pending.pop();
+      if (seen.add(context)) {
+        Context c = contexts.get(context);
+        if (c != null) {
+          pending.addAll(c.extended());
+        }
+      }
+    }
+    return seen;
+  }
+
+  /** One line per component, e.g. {@code M1 refines M0 sees C0}. */
+  String describe() {
+    StringBuilder sb = new StringBuilder();
+    for (Machine m : machines.values()) {
+      sb.append(m.name());
+      if (m.refines() != null) {
+        sb.append(" refines ").append(m.refines());
+      }
+      if (!m.sees().isEmpty()) {
+        sb.append(" sees ").append(String.join(", ", m.sees()));
+      }
+      sb.append('\n');
+    }
+    for (Context c : contexts.values()) {
+      sb.append(c.name());
+      if (!c.extended().isEmpty()) {
+        sb.append(" extends ").append(String.join(", ", c.extended()));
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+}
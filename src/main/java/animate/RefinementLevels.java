@@ -0,0 +1,204 @@
+package animate;
+
+import de.prob.animator.command.ComputeCoverageCommand.ComputeCoverageResult;
+import de.prob.scripting.Api;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Animates every machine of a refinement chain at once. Each machine is loaded into its own ProB
+ * instance and walked with the same seed, so one run checks the invariants and the event coverage
+ * of all the levels.
+ */
+class RefinementLevels {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(RefinementLevels.class);
+
+  /** A machine of the chain and its {@code .bum} file. */
+  record Level(String machine, Path file) {}
+
+  /** Outcome of the walk on one level; {@code error} is set if the machine could not be run. */
+  record Result(
+      String machine,
+      int steps,
+      int distinctStates,
+      int covered,
+      List<String> uncovered,
+      boolean deadlocked,
+      boolean invariantViolated,
+      List<String> violatedInvariants,
+      String error) {
+
+    boolean ok() {
+      return error == null && !invariantViolated;
+    }
+  }
+
+  private final Api api;
+  private final Map<String, String> prefs;
+  private final int steps;
+  private final InvariantChecker.Mode invariantMode;
+  private final WalkStrategy.Kind strategy;
+  private final int stallSteps;
+
+  RefinementLevels(
+      Api api,
+      Map<String, String> prefs,
+      int steps,
+      InvariantChecker.Mode invariantMode,
+      WalkStrategy.Kind strategy,
+      int stallSteps) {
+    this.api = api;
+    this.prefs = prefs;
+    this.steps = steps;
+    this.invariantMode = invariantMode;
+    this.strategy = strategy;
+    this.stallSteps = stallSteps;
+  }
+
+  /** {@code machine} and its abstractions, most abstract first. */
+  static List<Level> levels(RefinementGraph graph, String machine) throws IOException {
+    List<String> chain = new ArrayList<>(graph.chain(machine));
+    Collections.reverse(chain);
+    List<Level> levels = new ArrayList<>();
+    for (String name : chain) {
+      Path file = graph.pathOf(name);
+      if (file == null) {
+        throw new IOException("Machine '" + name + "' of the chain of " + machine + " not found");
+      }
+      levels.add(new Level(name, file));
+    }
+    return levels;
+  }
+
+  /** Walks all levels concurrently; the results are in the order of {@code levels}. */
+  List<Result> run(List<Level> levels, long seed) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(levels.size());
+    try {
+      List<Future<Result>> futures = new ArrayList<>();
+      for (Level level : levels) {
+        futures.add(executor.submit(() -> run(level, seed)));
+      }
+      List<Result> results = new ArrayList<>();
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.add(futures.get(i).get());
+        } catch (ExecutionException e) {
+          results.add(failed(levels.get(i), e.getCause()));
+        }
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Result run(Level level, long seed) {
+    StateSpace stateSpace = null;
+    try {
+      logger.info("Load {}", level.file());
+      try (Metrics.Timer timer = Metrics.time("load")) {
+        stateSpace = api.eventb_load(level.file().toString(), prefs);
+      }
+      RandomWalk walk =
+          new RandomWalk(stateSpace, seed, invariantMode, strategy.create(stateSpace));
+      walk.setStallSteps(stallSteps);
+      stateSpace.startTransaction();
+      try {
+        walk.run(new Trace(stateSpace), steps, transition -> {});
+      } finally {
+        stateSpace.endTransaction();
+      }
+
+      ComputeCoverageResult coverage = Animate.computeCoverage(stateSpace);
+      return new Result(
+          level.machine(),
+          walk.getStepsTaken(),
+          walk.getDistinctStates(),
+          coverage.getOps().size(),
+          coverage.getUncovered(),
+          walk.isDeadlocked(),
+          walk.isInvariantViolated(),
+          walk.getViolatedInvariants(),
+          null);
+    } catch (IOException | RuntimeException e) {
+      return failed(level, e);
+    } finally {
+      if (stateSpace != null) {
+        stateSpace.kill();
+      }
+    }
+  }
+
+  private static Result failed(Level level, Throwable e) {
+    logger.debug("Animating {} failed", level.machine(), e);
+    return new Result(level.machine(), 0, 0, 0, List.of(), false, false, List.of(), e.getMessage());
+  }
+
+  /** One line per level, most abstract first, then the details of each level. */
+  static void printSummary(List<Result> results) {
+    int width = "MACHINE".length();
+    for (Result result : results) {
+      width = Math.max(width, result.machine().length());
+    }
+    String format = "%-" + width + "s  %8s  %8s  %8s  %s";
+
+    System.out.println();
+    System.out.println(
+        String.format(Locale.ROOT, format, "MACHINE", "STEPS", "STATES", "COVERED", "RESULT"));
+    for (Result result : results) {
+      String status;
+      if (result.error() != null) {
+        status = "error";
+      } else if (result.invariantViolated()) {
+        status = "invariant violated";
+      } else if (result.deadlocked()) {
+        status = "deadlock";
+      } else {
+        status = "ok";
+      }
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              format,
+              result.machine(),
+              result.steps(),
+              result.distinctStates(),
+              result.covered() + "/" + (result.covered() + result.uncovered().size()),
+              status));
+    }
+
+    for (Result result : results) {
+      if (result.error() != null) {
+        System.err.println("Error animating " + result.machine() + ": " + result.error());
+        continue;
+      }
+      if (result.invariantViolated()) {
+        System.err.println(
+            "Error: "
+                + result.machine()
+                + " violated invariants:\n\t - "
+                + String.join("\n\t - ", result.violatedInvariants()));
+      }
+      if (!result.uncovered().isEmpty()) {
+        System.out.println(
+            result.machine()
+                + " uncovered operations:\n\t - "
+                + String.join("\n\t - ", result.uncovered()));
+      }
+    }
+  }
+}
@@ -1,39 +1,394 @@
 package animate;
 
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
 import de.prob.check.tracereplay.ReplayedTrace;
 import de.prob.check.tracereplay.TraceReplay;
+import de.prob.check.tracereplay.TraceReplayStatus;
 import de.prob.statespace.StateSpace;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.LoggerFactory;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.ParentCommand;
 
-@Command(name = "replay", description = "Replay json trace")
+@Command(name = "replay", description = "Replay json traces")
 class ReplayCommand implements Callable<Integer> {
 
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ReplayCommand.class);
+
+  /** Outcome of one trace; {@code status} is a {@link TraceReplayStatus} name or ERROR. */
+  record Result(Path trace, String status, String message) {
+    boolean ok() {
+      return TraceReplayStatus.PERFECT.name().equals(status);
+    }
+  }
+
+  private static final PathMatcher TRACE_FILES =
+      FileSystems.getDefault().getPathMatcher("glob:**.{json,animtrace}");
+
   @ParentCommand Animate parent;
 
   @Option(
       names = {"-t", "--trace"},
       required = true,
       paramLabel = "trace.json",
-      description = "Path to a json trace")
-  Path jsonTrace;
+      description =
+          "Path to a json or .animtrace trace, a directory searched for both, or a glob such as"
+              + " 'traces/**/*.json'; may be repeated")
+  List<String> traces;
+
+  @Option(
+      names = "--fail-fast",
+      description = "stop after the first trace that is not replayed perfectly")
+  boolean failFast;
+
+  @Option(
+      names = "--abstractions",
+      description =
+          "also replay the trace projected onto every machine the model refines, each on its own"
+              + " ProB instance, and report the first level the abstraction cannot follow")
+  boolean abstractions;
 
   @Override
   public Integer call() {
-    StateSpace stateSpace = parent.initAndLoadModel();
-    if (stateSpace == null) return 1;
+    List<Path> files;
+    try {
+      files = findTraces(parent.workingDir, traces);
+    } catch (IOException e) {
+      System.err.println("Error finding traces: " + e.getMessage());
+      return 1;
+    }
+    if (files.isEmpty()) {
+      System.err.println("Error: no traces found in " + String.join(", ", traces));
+      return 1;
+    }
+
+    if (abstractions) {
+      if (files.size() != 1) {
+        System.err.println("Error: --abstractions replays a single trace, found " + files.size());
+        return 1;
+      }
+      return replayAbstractions(files.get(0));
+    }
 
+    int jobs = Math.min(parent.jobs, files.size());
+    List<Result> results;
+    if (jobs == 1) {
+      StateSpace stateSpace = parent.initAndLoadModel();
+      if (stateSpace == null) return 1;
+      try {
+        System.out.println("Starting trace replay. Use --debug to view steps.");
+        results = replaySequentially(stateSpace, files);
+      } finally {
+        parent.releaseModel(stateSpace);
+        parent.modelResolver.cleanupTempDir();
+      }
+    } else {
+      StateSpacePool pool = parent.initAndLoadPool(jobs);
+      if (pool == null) return 1;
+      try {
+        System.out.println("Replaying " + files.size() + " traces on " + jobs + " instances.");
+        results = replayInParallel(pool, files);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        System.err.println("Error: replay interrupted");
+        return 1;
+      } finally {
+        parent.releasePool(pool);
+        parent.modelResolver.cleanupTempDir();
+      }
+    }
+
+    if (files.size() == 1 && results.size() == 1) {
+      Result result = results.get(0);
+      System.out.println("Trace replay status: " + result.status());
+      printError(result);
+    } else {
+      printTable(results, files.size());
+    }
+    return results.stream().allMatch(Result::ok) && results.size() == files.size() ? 0 : 1;
+  }
+
+  /** Replays the trace and its projection onto each abstraction concurrently. */
+  private int replayAbstractions(Path trace) {
+    parent.initLogging();
+    Path dir = null;
     try {
-      System.out.println("Starting trace replay. Use --debug to view steps.");
-      ReplayedTrace trace = TraceReplay.replayTraceFile(stateSpace, jsonTrace);
-      System.out.println("Trace replay status: " + trace.getReplayStatus());
-      return 0;
+      parent.validateInput();
+      Path selected = parent.resolveModel();
+      RefinementGraph graph = RefinementGraph.scanDirectory(PathNames.parentDir(selected));
+      String machine = RefinementGraph.componentName(PathNames.fileName(selected));
+      List<String> chain = graph.chain(machine);
+      dir = Files.createTempDirectory("animate-projection-");
+      List<TraceProjection.Level> levels = new TraceProjection(graph).project(trace, chain, dir);
+
+      System.out.println("Replaying the trace on " + levels.size() + " refinement levels.");
+      Map<String, String> prefs = parent.buildPrefs();
+      ExecutorService executor = Executors.newFixedThreadPool(levels.size());
+      List<Result> results = new ArrayList<>();
+      try {
+        List<Future<Result>> futures = new ArrayList<>();
+        for (TraceProjection.Level level : levels) {
+          Path model = graph.pathOf(level.machine());
+          futures.add(executor.submit(() -> replay(model, prefs, level.trace())));
+        }
+        for (Future<Result> future : futures) {
+          results.add(future.get());
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+      return printLevels(levels, results);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.err.println("Error: replay interrupted");
+      return 1;
+    } catch (Exception e) {
+      Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+      logger.error("Error replaying abstractions", cause);
+      System.err.println("Error replaying abstractions: " + cause.getMessage());
+      return 1;
     } finally {
-      stateSpace.kill();
+      if (dir != null) {
+        try {
+          MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+        } catch (IOException e) {
+          logger.warn("Failed to clean up {}", dir, e);
+        }
+      }
       parent.modelResolver.cleanupTempDir();
     }
   }
+
+  private Result replay(Path model, Map<String, String> prefs, Path trace) {
+    StateSpace stateSpace;
+    try (Metrics.Timer timer = Metrics.time("load")) {
+      stateSpace = parent.api.eventb_load(model.toString(), prefs);
+    } catch (IOException | RuntimeException e) {
+      logger.debug("Loading {} failed", model, e);
+      return new Result(trace, "ERROR", e.getMessage());
+    }
+    try {
+      return replay(stateSpace, trace);
+    } finally {
+      stateSpace.kill();
+    }
+  }
+
+  /**
+   * Prints one line per level, concrete first, and the first level that is not replayed
+   * perfectly. Returns the exit code.
+   */
+  private static int printLevels(List<TraceProjection.Level> levels, List<Result> results) {
+    int width = "MACHINE".length();
+    for (TraceProjection.Level level : levels) {
+      width = Math.max(width, level.machine().length());
+    }
+    System.out.println();
+    System.out.println(pad("MACHINE", width) + "     STEPS  STATUS");
+    for (int i = 0; i < levels.size(); i++) {
+      System.out.println(
+          pad(levels.get(i).machine(), width)
+              + String.format(Locale.ROOT, "  %8d  ", levels.get(i).steps())
+              + results.get(i).status());
+    }
+    System.out.println();
+
+    for (int i = 0; i < levels.size(); i++) {
+      Result result = results.get(i);
+      if (result.ok()) continue;
+      System.err.println(
+          "Error: simulation breaks at "
+              + levels.get(i).machine()
+              + ", trace replay status: "
+              + result.status());
+      printError(result);
+      return 1;
+    }
+    System.out.println("Trace replayed perfectly on all " + levels.size() + " levels.");
+    return 0;
+  }
+
+  private List<Result> replaySequentially(StateSpace stateSpace, List<Path> files) {
+    List<Result> results = new ArrayList<>();
+    for (Path file : files) {
+      Result result = replay(stateSpace, file);
+      results.add(result);
+      if (failFast && !result.ok()) break;
+    }
+    return results;
+  }
+
+  private List<Result> replayInParallel(StateSpacePool pool, List<Path> files)
+      throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(pool.all().size());
+    CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+    try {
+      for (Path file : files) {
+        completion.submit(
+            () -> {
+              StateSpace stateSpace = pool.take();
+              try {
+                return replay(stateSpace, file);
+              } finally {
+                pool.release(stateSpace);
+              }
+            });
+      }
+      List<Result> results = new ArrayList<>();
+      for (int i = 0; i < files.size(); i++) {
+        Result result;
+        try {
+          result = completion.take().get();
+        } catch (ExecutionException e) {
+          // replay() catches everything itself; this is only reached on errors such as OOM
+          throw new IllegalStateException(e.getCause());
+        }
+        results.add(result);
+        if (failFast && !result.ok()) break;
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  static Result replay(StateSpace stateSpace, Path file) {
+    logger.info("Replaying {}", file);
+    try (Metrics.Timer timer = Metrics.time("replay")) {
+      ReplayedTrace trace;
+      if (CompactTraceFile.isCompact(file)) {
+        trace = TraceReplay.replayTraceFile(stateSpace, CompactTraceFile.load(file));
+      } else {
+        trace = TraceReplay.replayTraceFile(stateSpace, file);
+      }
+      return new Result(file, trace.getReplayStatus().name(), null);
+    } catch (IOException | RuntimeException e) {
+      logger.debug("Replay of {} failed", file, e);
+      return new Result(file, "ERROR", e.getMessage());
+    }
+  }
+
+  /** Prints one line per replayed trace in path order, then the number of traces per status. */
+  private static void printTable(List<Result> results, int total) {
+    List<Result> sorted = new ArrayList<>(results);
+    sorted.sort((a, b) -> a.trace().compareTo(b.trace()));
+    int width = "STATUS".length();
+    for (Result result : sorted) {
+      width = Math.max(width, result.status().length());
+    }
+
+    System.out.println();
+    System.out.println(pad("STATUS", width) + "  TRACE");
+    for (Result result : sorted) {
+      System.out.println(pad(result.status(), width) + "  " + result.trace());
+    }
+    System.out.println();
+
+    Map<String, Integer> counts = new TreeMap<>();
+    for (Result result : results) {
+      counts.merge(result.status(), 1, Integer::sum);
+    }
+    if (results.size() < total) {
+      counts.put("NOT RUN", total - results.size());
+    }
+    System.out.println(
+        "Trace replay status: "
+            + counts.entrySet().stream()
+                .map(e -> e.getKey() + " " + e.getValue())
+                .collect(Collectors.joining(", ")));
+
+    for (Result result : sorted) {
+      printError(result);
+    }
+  }
+
+  static void printError(Result result) {
+    if (result.message() != null) {
+      System.err.println("Error replaying " + result.trace() + ": " + result.message());
+    }
+  }
+
+  private static String pad(String text, int width) {
+    return text + " ".repeat(width - text.length());
+  }
+
+  /**
+   * Expands each argument to trace files: a file is taken as is, a directory is searched
+   * recursively for {@code *.json} and {@code *.animtrace}, and anything containing a glob
+   * character is matched against the files under the directory part before the first glob
+   * character. A leading {@code **} segment also matches zero directories, so the files directly in
+   * that directory are included. Relative arguments are resolved against {@code workingDir}, and
+   * each file is returned once even if several arguments match it.
+   */
+  static List<Path> findTraces(Path workingDir, List<String> patterns) throws IOException {
+    TreeSet<Path> found = new TreeSet<>();
+    for (String pattern : patterns) {
+      int glob = indexOfGlob(pattern);
+      if (glob < 0) {
+        Path path = workingDir.resolve(pattern);
+        if (Files.isDirectory(path)) {
+          walk(path, TRACE_FILES).forEach(file -> found.add(file.normalize()));
+        } else if (Files.isRegularFile(path)) {
+          found.add(path.normalize());
+        } else {
+          throw new IOException("No such trace: " + pattern);
+        }
+        continue;
+      }
+
+      int slash = pattern.lastIndexOf('/', glob);
+      Path base = workingDir.resolve(slash < 0 ? "." : pattern.substring(0, slash + 1));
+      String expression = pattern.substring(slash + 1);
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + expression);
+      // The glob '**/' needs at least one directory, but is meant to match any depth
+      PathMatcher topLevel =
+          expression.startsWith("**/")
+              ? FileSystems.getDefault().getPathMatcher("glob:" + expression.substring(3))
+              : matcher;
+      if (Files.isDirectory(base)) {
+        for (Path file : walk(base, p -> true)) {
+          Path relative = base.relativize(file);
+          if (matcher.matches(relative) || topLevel.matches(relative)) {
+            found.add(file.normalize());
+          }
+        }
+      }
+    }
+    return new ArrayList<>(found);
+  }
+
+  private static List<Path> walk(Path dir, PathMatcher matcher) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      return files.filter(Files::isRegularFile).filter(matcher::matches).toList();
+    }
+  }
+
+  private static int indexOfGlob(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      if ("*?[{".indexOf(pattern.charAt(i)) >= 0) return i;
+    }
+    return -1;
+  }
 }
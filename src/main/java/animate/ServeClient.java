@@ -0,0 +1,87 @@
+package animate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Forwards a command line to a running {@code animate serve} and relays its output. */
+final class ServeClient {
+
+  static final String CONNECT_OPTION = "--connect";
+
+  private ServeClient() {}
+
+  /** Returns the port given with {@code --connect}, or {@code null} to run locally. */
+  static Integer connectPort(String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals(CONNECT_OPTION) && i + 1 < args.length) {
+        return parsePort(args[i + 1]);
+      }
+      if (args[i].startsWith(CONNECT_OPTION + "=")) {
+        return parsePort(args[i].substring(CONNECT_OPTION.length() + 1));
+      }
+    }
+    return null;
+  }
+
+  private static int parsePort(String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid port for " + CONNECT_OPTION + ": " + value, e);
+    }
+  }
+
+  static int forward(int port, String[] args) {
+    List<String> forwarded = new ArrayList<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals(CONNECT_OPTION)) {
+        i++;
+      } else if (!args[i].startsWith(CONNECT_OPTION + "=")) {
+        forwarded.add(args[i]);
+      }
+    }
+
+    Path tokenFile = ServeProtocol.tokenFile(port);
+    String token;
+    try {
+      token = ServeProtocol.readToken(tokenFile);
+    } catch (IOException e) {
+      System.err.println("Error: no animate server token in " + tokenFile + ": " + e.getMessage());
+      return 1;
+    }
+
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+      String workingDir = Paths.get("").toAbsolutePath().toString();
+      ServeProtocol.writeRequest(out, token, workingDir, forwarded);
+
+      while (true) {
+        int channel = in.readUnsignedByte();
+        if (channel == ServeProtocol.EXIT) {
+          return in.readInt();
+        }
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        PrintStream target = channel == ServeProtocol.STDERR ? System.err : System.out;
+        target.write(payload, 0, payload.length);
+        target.flush();
+      }
+    } catch (IOException e) {
+      System.err.println("Error talking to animate server on port " + port + ": " + e.getMessage());
+      return 1;
+    }
+  }
+}
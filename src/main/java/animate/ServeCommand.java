@@ -0,0 +1,121 @@
+package animate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+@Command(
+    name = "serve",
+    description = "Keep loaded models warm and run requests sent with --connect <port>")
+class ServeCommand implements Callable<Integer> {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ServeCommand.class);
+
+  @Option(
+      names = {"-p", "--port"},
+      defaultValue = "8642",
+      description = "localhost port to listen on (default: ${DEFAULT-VALUE})")
+  int port;
+
+  @Option(
+      names = "--max-models",
+      defaultValue = "8",
+      description = "number of loaded models to keep (default: ${DEFAULT-VALUE})")
+  int maxModels;
+
+  @Override
+  public Integer call() {
+    if (maxModels <= 0) {
+      System.err.println("Number of cached models must be positive, got: " + maxModels);
+      return 1;
+    }
+
+    ModelCache cache = new ModelCache(maxModels);
+    Path tokenFile = ServeProtocol.tokenFile(port);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> close(cache, tokenFile)));
+
+    try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      String token = ServeProtocol.createToken(tokenFile);
+      System.out.println("Listening on " + server.getLocalSocketAddress());
+      // Requests redirect System.out/err, so they are served one at a time
+      while (true) {
+        try (Socket socket = server.accept()) {
+          handle(socket, token, cache);
+        } catch (IOException e) {
+          logger.warn("Request failed", e);
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Error starting server", e);
+      System.err.println("Error starting server: " + e.getMessage());
+      return 1;
+    } finally {
+      close(cache, tokenFile);
+    }
+  }
+
+  private static void close(ModelCache cache, Path tokenFile) {
+    cache.close();
+    try {
+      Files.deleteIfExists(tokenFile);
+    } catch (IOException e) {
+      logger.warn("Could not delete {}", tokenFile, e);
+    }
+  }
+
+  private void handle(Socket socket, String token, ModelCache cache) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+    ServeProtocol.Request request = ServeProtocol.readRequest(in);
+    if (!ServeProtocol.tokenMatches(token, request.token())) {
+      logger.warn("Rejected a request with a wrong token");
+      try (PrintStream clientErr = framed(out, ServeProtocol.STDERR)) {
+        clientErr.println("Error: the request does not carry the token of this server");
+      }
+      ServeProtocol.writeExit(out, 2);
+      return;
+    }
+    Path workingDir = request.workingDir();
+    String[] args = request.args().toArray(new String[0]);
+
+    PrintStream originalOut = System.out;
+    PrintStream originalErr = System.err;
+    int exitCode;
+    try (PrintStream clientOut = framed(out, ServeProtocol.STDOUT);
+        PrintStream clientErr = framed(out, ServeProtocol.STDERR)) {
+      System.setOut(clientOut);
+      System.setErr(clientErr);
+      try {
+        exitCode = Animate.execute(args, workingDir, cache);
+      } finally {
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+      }
+      clientOut.flush();
+      clientErr.flush();
+    }
+    ServeProtocol.writeExit(out, exitCode);
+    logger.debug("Served {} with exit code {}", String.join(" ", args), exitCode);
+  }
+
+  private static PrintStream framed(DataOutputStream out, int channel) {
+    return new PrintStream(
+        new ServeProtocol.FrameOutputStream(out, channel), true, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,150 @@
+package animate;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Wire format between {@code animate --connect} and {@code animate serve}.
+ *
+ * <p>A request is the server's token, the client's working directory and its command-line
+ * arguments. The server writes a random token to a file only its user can read when it starts, so
+ * only that user's processes can have their command lines run by it. The response is a sequence of
+ * frames, each a channel byte and a length-prefixed payload: {@link #STDOUT} and {@link #STDERR}
+ * carry output as it is produced, and a final {@link #EXIT} frame carries the exit code.
+ */
+final class ServeProtocol {
+
+  static final int EXIT = 0;
+  static final int STDOUT = 1;
+  static final int STDERR = 2;
+
+  private static final int MAX_ARGS = 1024;
+  private static final int TOKEN_BYTES = 32;
+
+  /** A forwarded command line. */
+  record Request(String token, Path workingDir, List<String> args) {}
+
+  private ServeProtocol() {}
+
+  /**
+   * Where the server on {@code port} keeps its token: {@code $XDG_RUNTIME_DIR/animate}, falling
+   * back to the animate cache directory.
+   */
+  static Path tokenFile(int port) {
+    String runtime = System.getenv("XDG_RUNTIME_DIR");
+    Path dir =
+        runtime != null && !runtime.isEmpty()
+            ? Paths.get(runtime, "animate")
+            : ExtractionCache.defaultRoot();
+    return dir.resolve("serve-" + port + ".token");
+  }
+
+  /** Writes a new random token to {@code file}, readable only by the current user. */
+  static String createToken(Path file) throws IOException {
+    byte[] bytes = new byte[TOKEN_BYTES];
+    new SecureRandom().nextBytes(bytes);
+    String token = HexFormat.of().formatHex(bytes);
+
+    Path dir = Files.createDirectories(PathNames.parentDir(file));
+    // Temporary files are created with owner-only permissions
+    Path staging = Files.createTempFile(dir, "serve-", ".tmp");
+    try {
+      Files.writeString(staging, token);
+      Files.move(
+          staging, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(staging);
+    }
+    return token;
+  }
+
+  static String readToken(Path file) throws IOException {
+    return Files.readString(file).trim();
+  }
+
+  /** Compares tokens in time independent of where they differ. */
+  static boolean tokenMatches(String expected, String actual) {
+    return MessageDigest.isEqual(
+        expected.getBytes(StandardCharsets.UTF_8), actual.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static void writeRequest(
+      DataOutputStream out, String token, String workingDir, List<String> args)
+      throws IOException {
+    out.writeInt(args.size());
+    out.writeUTF(token);
+    out.writeUTF(workingDir);
+    for (String arg : args) {
+      out.writeUTF(arg);
+    }
+    out.flush();
+  }
+
+  static Request readRequest(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || count > MAX_ARGS) {
+      throw new IOException("Malformed request: " + count + " arguments");
+    }
+    String token = in.readUTF();
+    Path workingDir = Paths.get(in.readUTF());
+    List<String> args = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      args.add(in.readUTF());
+    }
+    return new Request(token, workingDir, args);
+  }
+
+  static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+    synchronized (out) {
+      out.writeByte(EXIT);
+      out.writeInt(exitCode);
+      out.flush();
+    }
+  }
+
+  /** An output stream that wraps everything written to it into frames of one channel. */
+  static final class FrameOutputStream extends OutputStream {
+
+    private final DataOutputStream out;
+    private final int channel;
+
+    FrameOutputStream(DataOutputStream out, int channel) {
+      this.out = out;
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return;
+      synchronized (out) {
+        out.writeByte(channel);
+        out.writeInt(len);
+        out.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (out) {
+        out.flush();
+      }
+    }
+  }
+}
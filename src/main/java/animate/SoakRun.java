@@ -0,0 +1,202 @@
+package animate;
+
+import de.prob.animator.command.ComputeCoverageCommand.ComputeCoverageResult;
+import de.prob.animator.domainobjects.FormulaExpand;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import de.prob.statespace.Transition;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A random walk that runs for a fixed wall-clock time with bounded memory. The walk is cut into
+ * segments of a fixed number of steps; each segment is saved to its own numbered trace file and
+ * then dropped, so only the current segment and the last few transitions stay in memory. A
+ * deadlock restarts the walk from the initial state; an invariant violation ends the run.
+ *
+ * <p>Segments continue each other: segment {@code n} continues from the state segment {@code n -
+ * 1} ended in, or from the initial state after a restart. Every segment file starts at the initial
+ * state, so it can be replayed on its own: a segment that continues another one begins with the
+ * shortest path ProB finds to the state it continues from.
+ */
+class SoakRun {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SoakRun.class);
+
+  // Steps executed between checks of the clock
+  private static final int CHUNK_STEPS = 1000;
+
+  /** Saves one segment; returns {@code false} if it could not be written. */
+  interface SegmentSaver {
+    boolean save(Trace trace, Path file);
+  }
+
+  private final StateSpace stateSpace;
+  private final InvariantChecker.Mode invariantMode;
+  private final WalkStrategy.Kind strategy;
+  private final int segmentSteps;
+  private final int recentSize;
+  private final Duration reportInterval;
+
+  private final Deque<Transition> recent = new ArrayDeque<>();
+  private long steps;
+  private long restarts;
+  private int segment;
+  private RandomWalk violating;
+
+  SoakRun(
+      StateSpace stateSpace,
+      InvariantChecker.Mode invariantMode,
+      WalkStrategy.Kind strategy,
+      int segmentSteps,
+      int recentSize,
+      Duration reportInterval) {
+    this.stateSpace = stateSpace;
+    this.invariantMode = invariantMode;
+    this.strategy = strategy;
+    this.segmentSteps = segmentSteps;
+    this.recentSize = recentSize;
+    this.reportInterval = reportInterval;
+  }
+
+  /**
+   * Runs for {@code duration}. Segments are saved next to {@code save}, as {@code name-00001.json}
+   * and so on, unless {@code save} is {@code null}. Returns {@code false} if an invariant was
+   * violated or a segment could not be saved.
+   */
+  boolean run(Duration duration, long seed, Path save, SegmentSaver saver) {
+    SplittableRandom seeds = new SplittableRandom(seed);
+    long start = System.nanoTime();
+    long end = start + duration.toNanos();
+    long nextReport = start + reportInterval.toNanos();
+
+    Trace trace = new Trace(stateSpace);
+    boolean atRoot = true;
+    int segmentTaken = 0;
+    boolean ok = true;
+    while (System.nanoTime() < end) {
+      int chunk = Math.min(CHUNK_STEPS, segmentSteps - segmentTaken);
+      // A fresh walk per chunk keeps the memory of stateful strategies bounded
+      RandomWalk walk =
+          new RandomWalk(stateSpace, seeds.nextLong(), invariantMode, strategy.create(stateSpace));
+      stateSpace.startTransaction();
+      try {
+        trace = walk.run(trace, chunk, this::remember);
+      } finally {
+        stateSpace.endTransaction();
+      }
+      steps += walk.getStepsTaken();
+      segmentTaken += walk.getStepsTaken();
+
+      if (walk.isInvariantViolated()) {
+        violating = walk;
+        saveSegment(trace, save, saver);
+        ok = false;
+        break;
+      }
+      if (walk.isDeadlocked() && atRoot && walk.getStepsTaken() == 0) {
+        System.err.println("Error: no event is enabled in the initial state");
+        ok = false;
+        break;
+      }
+      atRoot = false;
+      if (walk.isDeadlocked() || segmentTaken >= segmentSteps) {
+        if (segmentTaken > 0) {
+          ok &= saveSegment(trace, save, saver);
+        }
+        segmentTaken = 0;
+        if (walk.isDeadlocked()) {
+          restarts++;
+          recent.clear();
+          trace = new Trace(stateSpace);
+          atRoot = true;
+        } else {
+          trace = stateSpace.getTrace(trace.getCurrentState().getId());
+        }
+      }
+
+      long now = System.nanoTime();
+      if (now >= nextReport) {
+        report(now - start);
+        nextReport = now + reportInterval.toNanos();
+      }
+    }
+    if (violating == null && segmentTaken > 0) {
+      ok &= saveSegment(trace, save, saver);
+    }
+    report(System.nanoTime() - start);
+    return ok;
+  }
+
+  private void remember(Transition transition) {
+    if (recent.size() == recentSize) {
+      recent.removeFirst();
+    }
+    recent.addLast(transition);
+  }
+
+  private boolean saveSegment(Trace trace, Path save, SegmentSaver saver) {
+    if (save == null) return true;
+    segment++;
+    Path file = segmentFile(save, segment);
+    logger.info("Saving soak segment {} to {}", segment, file);
+    return saver.save(trace, file);
+  }
+
+  /** {@code dir/run.json} becomes {@code dir/run-00003.json} for segment 3. */
+  static Path segmentFile(Path save, int segment) {
+    String name = PathNames.fileName(save);
+    int dot = name.lastIndexOf('.');
+    String base = dot < 0 ? name : name.substring(0, dot);
+    String extension = dot < 0 ? ".json" : name.substring(dot);
+    return save.resolveSibling(String.format(Locale.ROOT, "%s-%05d%s", base, segment, extension));
+  }
+
+  private void report(long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    ComputeCoverageResult coverage = Animate.computeCoverage(stateSpace);
+    int covered = coverage.getOps().size();
+    int uncovered = coverage.getUncovered().size();
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "[%s] %d steps, %.0f steps/s, %d restarts, %d segments, %d/%d operations covered",
+            formatElapsed(elapsedNanos),
+            steps,
+            seconds > 0 ? steps / seconds : 0.0,
+            restarts,
+            segment,
+            covered,
+            covered + uncovered));
+    System.out.flush();
+  }
+
+  static String formatElapsed(long nanos) {
+    long total = nanos / 1_000_000_000L;
+    return String.format(
+        Locale.ROOT, "%02d:%02d:%02d", total / 3600, (total % 3600) / 60, total % 60);
+  }
+
+  /** The walk that violated an invariant, or {@code null}. */
+  RandomWalk getViolatingWalk() {
+    return violating;
+  }
+
+  /** Prints the last transitions before the run ended, oldest first. */
+  void printRecent() {
+    System.err.println("Last " + recent.size() + " steps:");
+    for (Transition transition : recent) {
+      System.err.println("\t" + transition.evaluate(FormulaExpand.EXPAND).getPrettyRep());
+    }
+  }
+
+  long getSteps() {
+    return steps;
+  }
+}
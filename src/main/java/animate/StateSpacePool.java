@@ -0,0 +1,109 @@
+package animate;
+
+import de.prob.scripting.Api;
+import de.prob.statespace.StateSpace;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed set of {@link StateSpace}s loaded from the same model. Every instance is backed by its
+ * own probcli process, so callers on different threads can animate them independently.
+ */
+class StateSpacePool implements AutoCloseable {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(StateSpacePool.class);
+
+  private final List<StateSpace> stateSpaces;
+  private final BlockingQueue<StateSpace> idle;
+
+  private StateSpacePool(List<StateSpace> stateSpaces) {
+    this.stateSpaces = Collections.unmodifiableList(stateSpaces);
+    this.idle = new LinkedBlockingQueue<>(stateSpaces);
+  }
+
+  /** Loads {@code size} instances of {@code model} concurrently. */
+  static StateSpacePool load(Api api, Path model, Map<String, String> prefs, int size)
+      throws IOException, InterruptedException {
+    return load(api, model, prefs, size, List.of());
+  }
+
+  /**
+   * Makes a pool of {@code size} instances of {@code model} from the already loaded {@code
+   * reused} ones and as many more as needed, loaded concurrently. On failure every instance is
+   * killed, the reused ones too.
+   */
+  static StateSpacePool load(
+      Api api, Path model, Map<String, String> prefs, int size, List<StateSpace> reused)
+      throws IOException, InterruptedException {
+    List<StateSpace> loaded = new ArrayList<>(reused);
+    int missing = size - reused.size();
+    if (missing <= 0) {
+      return new StateSpacePool(loaded);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(missing);
+    List<Future<StateSpace>> futures = new ArrayList<>();
+    for (int i = 0; i < missing; i++) {
+      futures.add(executor.submit(() -> load(api, model, prefs)));
+    }
+    executor.shutdown();
+
+    IOException failure = null;
+    try {
+      for (Future<StateSpace> future : futures) {
+        try {
+          loaded.add(future.get());
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = new IOException("Failed to load model: " + e.getCause().getMessage(), e);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      loaded.forEach(StateSpace::kill);
+      throw e;
+    }
+    if (failure != null) {
+      loaded.forEach(StateSpace::kill);
+      throw failure;
+    }
+    logger.debug("Loaded {} ProB instances of {}", missing, model);
+    return new StateSpacePool(loaded);
+  }
+
+  private static StateSpace load(Api api, Path model, Map<String, String> prefs)
+      throws IOException {
+    try (Metrics.Timer timer = Metrics.time("load")) {
+      return api.eventb_load(model.toString(), prefs);
+    }
+  }
+
+  List<StateSpace> all() {
+    return stateSpaces;
+  }
+
+  /** Waits for an idle instance; it must be handed back with {@link #release}. */
+  StateSpace take() throws InterruptedException {
+    return idle.take();
+  }
+
+  void release(StateSpace stateSpace) {
+    idle.add(stateSpace);
+  }
+
+  @Override
+  public void close() {
+    stateSpaces.forEach(StateSpace::kill);
+  }
+}
@@ -0,0 +1,106 @@
+package animate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.prob.animator.domainobjects.FormulaExpand;
+import de.prob.statespace.Transition;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/** Prints the steps of a walk as they happen, in one of the {@code --output} formats. */
+class StepOutput implements RandomWalk.StepListener {
+
+  enum Format {
+    /** Expanded event with parameters per step, then the final state and coverage. */
+    pretty,
+    /** One JSON object per step, then one summary object. */
+    ndjson,
+    /** Nothing per step; no formula is evaluated for output. */
+    quiet
+  }
+
+  private final Format format;
+  private final boolean expand;
+  private final PrintStream out;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private int step;
+
+  /**
+   * @param expand in ndjson mode, evaluate and include the parameters of every event
+   */
+  StepOutput(Format format, boolean expand, PrintStream out) {
+    this.format = format;
+    this.expand = expand;
+    this.out = out;
+  }
+
+  @Override
+  public void onStep(Transition transition) {
+    step++;
+    switch (format) {
+      case pretty:
+        out.println(expand(transition).getPrettyRep());
+        break;
+      case ndjson:
+        ObjectNode node = mapper.createObjectNode();
+        node.put("type", "step");
+        node.put("step", step);
+        node.put("event", transition.getName());
+        if (expand) {
+          node.putPOJO("params", expand(transition).getParameterValues());
+        }
+        node.put("state", transition.getDestination().getId());
+        print(node);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static Transition expand(Transition transition) {
+    try (Metrics.Timer timer = Metrics.time("evaluate")) {
+      return transition.evaluate(FormulaExpand.EXPAND);
+    }
+  }
+
+  /**
+   * In ndjson mode, prints the record that ends the walk. {@code events} are the events of the
+   * machine, for the enabling statistics of the walk.
+   */
+  void summary(String machine, RandomWalk walk, List<String> uncovered, List<String> events) {
+    if (format != Format.ndjson) return;
+    ObjectNode node = mapper.createObjectNode();
+    node.put("type", "summary");
+    node.put("machine", machine);
+    node.put("seed", walk.getSeed());
+    node.put("steps", walk.getStepsTaken());
+    node.put("distinctStates", walk.getDistinctStates());
+    node.put("restarts", walk.getRestarts());
+    node.put("deadlock", walk.isDeadlocked());
+    node.putPOJO("violatedInvariants", walk.getViolatedInvariants());
+    node.putPOJO("uncovered", uncovered);
+    EnablingStats enabling = walk.getEnablingStats();
+    if (enabling != null) {
+      ObjectNode stats = node.putObject("enabling");
+      stats.put("states", enabling.getStates());
+      ObjectNode times = stats.putObject("enabled");
+      for (String event : events) {
+        times.put(event, enabling.timesEnabled(event));
+      }
+      stats.putPOJO("neverEnabled", enabling.neverEnabled(events));
+      stats.put("singleEnabledEvent", enabling.getNearDeadlocks());
+    }
+    print(node);
+  }
+
+  private void print(ObjectNode node) {
+    try {
+      out.println(mapper.writeValueAsString(node));
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+    out.flush();
+  }
+}
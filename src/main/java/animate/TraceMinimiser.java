@@ -0,0 +1,241 @@
+package animate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.prob.check.tracereplay.ReplayedTrace;
+import de.prob.check.tracereplay.TraceReplay;
+import de.prob.check.tracereplay.TraceReplayStatus;
+import de.prob.statespace.State;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Trace;
+import de.prob.statespace.Transition;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shrinks a saved trace that ends in an invariant violation with delta debugging (ddmin). Each
+ * candidate is a subsequence of the original steps, replayed by {@link TraceReplay} from the
+ * event names and parameters alone; it reproduces the violation if all of its steps can be
+ * replayed and one of the states it reaches violates one of the original invariants. The
+ * candidates of one round are replayed concurrently on the instances of a {@link StateSpacePool}.
+ *
+ * <p>The steps that set up constants and initialise the machine are always kept.
+ */
+class TraceMinimiser {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(TraceMinimiser.class);
+
+  private static final String TRANSITIONS = "transitionList";
+  // Recorded values of the original run; a shorter trace reaches other states
+  private static final List<String> STATE_FIELDS = List.of("destState", "destStateNotChanged");
+
+  /** Outcome of replaying one candidate. */
+  private record Attempt(boolean reproduces, int used, Trace trace) {
+    static final Attempt FAILED = new Attempt(false, 0, null);
+  }
+
+  private final StateSpacePool pool;
+  private final List<String> violatedInvariants;
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final AtomicInteger replays = new AtomicInteger();
+
+  // The saved trace without its transitions
+  private ObjectNode document;
+  private List<JsonNode> prefix;
+  private List<JsonNode> steps;
+
+  /**
+   * @param violatedInvariants invariants violated at the end of the original trace; a candidate
+   *     has to violate one of them, or any invariant if the list is empty
+   */
+  TraceMinimiser(StateSpacePool pool, List<String> violatedInvariants) {
+    this.pool = pool;
+    this.violatedInvariants = violatedInvariants;
+  }
+
+  /** {@code dir/run.json} becomes {@code dir/run.min.json}. */
+  static Path minimisedFile(Path trace) {
+    String name = PathNames.fileName(trace);
+    int dot = name.lastIndexOf('.');
+    String base = dot < 0 ? name : name.substring(0, dot);
+    String extension = dot < 0 ? ".json" : name.substring(dot);
+    return trace.resolveSibling(base + ".min" + extension);
+  }
+
+  /**
+   * Returns the shortest reproducing trace found, as replayed on one of the pool's instances, or
+   * {@code null} if the original trace does not reproduce the violation when replayed.
+   */
+  Trace minimise(Path trace) throws IOException, InterruptedException, ExecutionException {
+    read(trace);
+    List<Integer> current = new ArrayList<>();
+    for (int i = 0; i < steps.size(); i++) {
+      current.add(i);
+    }
+
+    Attempt best = test(current);
+    if (!best.reproduces()) {
+      logger.warn("Replaying {} does not reproduce the violation", trace);
+      return null;
+    }
+    current = new ArrayList<>(current.subList(0, best.used()));
+
+    ExecutorService executor = Executors.newFixedThreadPool(pool.all().size());
+    try {
+      int n = 2;
+      while (current.size() >= 2) {
+        logger.info("Minimising: {} steps, {} chunks", current.size(), n);
+        List<List<Integer>> subsets = split(current, n);
+        List<List<Integer>> candidates = new ArrayList<>(subsets);
+        // With two chunks the complements are the subsets themselves
+        if (n > 2) {
+          for (int i = 0; i < subsets.size(); i++) {
+            candidates.add(complement(subsets, i));
+          }
+        }
+
+        List<Future<Attempt>> futures = new ArrayList<>();
+        for (List<Integer> candidate : candidates) {
+          futures.add(executor.submit(() -> test(candidate)));
+        }
+        int found = -1;
+        for (int i = 0; i < futures.size(); i++) {
+          Attempt attempt = futures.get(i).get();
+          if (found < 0 && attempt.reproduces()) {
+            found = i;
+            best = attempt;
+          }
+        }
+
+        if (found >= 0) {
+          current = new ArrayList<>(candidates.get(found).subList(0, best.used()));
+          n = found < subsets.size() ? 2 : Math.max(n - 1, 2);
+        } else if (n < current.size()) {
+          n = Math.min(2 * n, current.size());
+        } else {
+          break;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    logger.info("Minimised {} to {} steps in {} replays", trace, current.size(), replays);
+    return best.trace();
+  }
+
+  private void read(Path trace) throws IOException {
+    Path json = trace;
+    if (CompactTraceFile.isCompact(trace)) {
+      json = Files.createTempFile("animate-minimise-", ".json");
+      CompactTraceFile.decode(trace, json);
+    }
+    try {
+      document = (ObjectNode) mapper.readTree(json.toFile());
+    } finally {
+      if (!json.equals(trace)) {
+        Files.deleteIfExists(json);
+      }
+    }
+
+    prefix = new ArrayList<>();
+    steps = new ArrayList<>();
+    for (JsonNode node : document.path(TRANSITIONS)) {
+      ObjectNode transition = ((ObjectNode) node).deepCopy();
+      transition.remove(STATE_FIELDS);
+      if (steps.isEmpty() && transition.path("name").asText().startsWith("$")) {
+        prefix.add(transition);
+      } else {
+        steps.add(transition);
+      }
+    }
+    // Every candidate gets its own list
+    document.remove(TRANSITIONS);
+  }
+
+  /** Splits {@code steps} into {@code n} consecutive chunks whose sizes differ by at most one. */
+  static List<List<Integer>> split(List<Integer> steps, int n) {
+    List<List<Integer>> chunks = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < n; i++) {
+      int end = start + (steps.size() - start) / (n - i);
+      chunks.add(steps.subList(start, end));
+      start = end;
+    }
+    return chunks;
+  }
+
+  /** All chunks but the {@code skip}-th, concatenated in order. */
+  static List<Integer> complement(List<List<Integer>> chunks, int skip) {
+    List<Integer> rest = new ArrayList<>();
+    for (int i = 0; i < chunks.size(); i++) {
+      if (i != skip) {
+        rest.addAll(chunks.get(i));
+      }
+    }
+    return rest;
+  }
+
+  /** Replays the setup steps followed by the given steps of the original trace. */
+  private Attempt test(List<Integer> candidate) throws IOException, InterruptedException {
+    ObjectNode copy = document.deepCopy();
+    ArrayNode transitions = copy.putArray(TRANSITIONS);
+    transitions.addAll(prefix);
+    for (int index : candidate) {
+      transitions.add(steps.get(index));
+    }
+
+    Path file = Files.createTempFile("animate-candidate-", ".json");
+    StateSpace stateSpace = pool.take();
+    try {
+      mapper.writeValue(file.toFile(), copy);
+      ReplayedTrace replayed = TraceReplay.replayTraceFile(stateSpace, file);
+      replays.incrementAndGet();
+      if (replayed.getReplayStatus() != TraceReplayStatus.PERFECT) {
+        return Attempt.FAILED;
+      }
+      return firstViolation(stateSpace, replayed.getTrace());
+    } catch (RuntimeException e) {
+      logger.debug("Replaying a candidate failed", e);
+      return Attempt.FAILED;
+    } finally {
+      pool.release(stateSpace);
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /** Cuts the replayed trace after the first state violating one of the invariants. */
+  private Attempt firstViolation(StateSpace stateSpace, Trace replayed) {
+    InvariantChecker checker = InvariantChecker.of(stateSpace);
+    Trace trace = new Trace(stateSpace);
+    for (Transition transition : replayed.getTransitionList()) {
+      trace = trace.add(transition);
+      State state = transition.getDestination();
+      if (!state.isExplored()) {
+        state.explore();
+      }
+      if (state.isInvariantOk()) continue;
+      int used = Math.max(0, trace.getTransitionList().size() - prefix.size());
+      if (violatedInvariants.isEmpty() || checker == null) {
+        return new Attempt(true, used, trace);
+      }
+      for (String invariant : checker.violated(state)) {
+        if (violatedInvariants.contains(invariant)) {
+          return new Attempt(true, used, trace);
+        }
+      }
+    }
+    return Attempt.FAILED;
+  }
+}
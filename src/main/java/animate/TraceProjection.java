@@ -0,0 +1,132 @@
+package animate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Projects a trace of a machine onto the machines it refines. Going up one level, each step of a
+ * refined event becomes a step of the abstract event it refines, keeping the parameters the
+ * abstract event has; steps of new events, which refine skip, are dropped. The recorded values of
+ * the destination states are kept for the variables and constants the abstraction still has, so
+ * the replay checks that the abstract machine can follow the concrete one step by step.
+ *
+ * <p>An event that merges several abstract events is projected onto the first of them.
+ */
+class TraceProjection {
+
+  private static final String TRANSITIONS = "transitionList";
+  private static final String SETUP_CONSTANTS = "$setup_constants";
+
+  /** The trace projected onto {@code machine}, with the number of steps it kept. */
+  record Level(String machine, Path trace, int steps) {}
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final RefinementGraph graph;
+
+  TraceProjection(RefinementGraph graph) {
+    this.graph = graph;
+  }
+
+  /**
+   * Writes the trace, recorded on the first machine of {@code chain}, projected onto every machine
+   * of the chain into {@code dir}; the first level is the trace itself.
+   */
+  List<Level> project(Path trace, List<String> chain, Path dir) throws IOException {
+    Path json = trace;
+    if (CompactTraceFile.isCompact(trace)) {
+      json = dir.resolve("recorded.json");
+      CompactTraceFile.decode(trace, json);
+    }
+    ObjectNode document = (ObjectNode) mapper.readTree(json.toFile());
+
+    List<Level> levels = new ArrayList<>();
+    for (int i = 0; i < chain.size(); i++) {
+      String machine = chain.get(i);
+      if (i > 0) {
+        document = projectUp(document, chain.get(i - 1), machine);
+      }
+      Path file = dir.resolve(i + "-" + machine + ".json");
+      mapper.writeValue(file.toFile(), document);
+      levels.add(new Level(machine, file, document.path(TRANSITIONS).size()));
+    }
+    return levels;
+  }
+
+  /** Projects a trace of {@code concrete} onto {@code abstraction}, the machine it refines. */
+  private ObjectNode projectUp(ObjectNode document, String concrete, String abstraction) {
+    Set<String> variables = Set.copyOf(graph.machine(abstraction).variables());
+    Set<String> constants = graph.constantsOf(abstraction);
+
+    JsonNode recorded = document.path(TRANSITIONS);
+    document.remove(TRANSITIONS);
+    ObjectNode projected = document.deepCopy();
+    document.set(TRANSITIONS, recorded);
+    ArrayNode transitions = projected.putArray(TRANSITIONS);
+    for (JsonNode node : recorded) {
+      ObjectNode transition = ((ObjectNode) node).deepCopy();
+      String name = transition.path("name").asText();
+      if (name.startsWith("$")) {
+        retain(transition, name.equals(SETUP_CONSTANTS) ? constants : variables);
+        transitions.add(transition);
+        continue;
+      }
+
+      RefinementGraph.Event event = graph.event(concrete, name);
+      if (event == null) {
+        // Not an event of the model; the replay reports it
+        transitions.add(transition);
+        continue;
+      }
+      if (event.refines().isEmpty()) continue;
+
+      String refined = event.refines().get(0);
+      transition.put("name", refined);
+      JsonNode params = transition.path("params");
+      if (params.isObject()) {
+        Set<String> parameters = graph.parametersOf(abstraction, refined);
+        ((ObjectNode) params).retain(parameters);
+      }
+      retain(transition, variables);
+      // Written against the concrete machine's identifiers
+      transition.remove(List.of("preds", "postconditions"));
+      transitions.add(transition);
+    }
+
+    retainNames(projected, "variableNames", variables);
+    retainNames(projected, "constantNames", constants);
+    projected.remove(List.of("machineOperationInfos", "globalIdentifierTypes"));
+    JsonNode metadata = projected.path("metadata");
+    if (metadata.isObject() && metadata.has("modelName")) {
+      ((ObjectNode) metadata).put("modelName", abstraction);
+    }
+    return projected;
+  }
+
+  /** Keeps only the recorded values of {@code identifiers} in a step. */
+  private static void retain(ObjectNode transition, Set<String> identifiers) {
+    JsonNode state = transition.path("destState");
+    if (state.isObject()) {
+      ((ObjectNode) state).retain(identifiers);
+    }
+    retainNames(transition, "destStateNotChanged", identifiers);
+  }
+
+  private static void retainNames(ObjectNode node, String field, Set<String> identifiers) {
+    if (!node.path(field).isArray()) return;
+    ArrayNode names = (ArrayNode) node.get(field);
+    List<JsonNode> kept = new ArrayList<>();
+    names.forEach(
+        name -> {
+          if (identifiers.contains(name.asText())) kept.add(name);
+        });
+    names.removeAll();
+    names.addAll(kept);
+  }
+}
@@ -0,0 +1,52 @@
+package animate;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of ProB state ids. ProB numbers the states it finds, so apart from {@code root} the ids are
+ * small decimal numbers, which are kept in a bit set instead of as strings.
+ */
+final class VisitedStates {
+
+  private final BitSet numbered = new BitSet();
+  private final Set<String> named = new HashSet<>();
+  private int size;
+
+  /** Returns {@code true} if {@code id} was not in the set yet. */
+  boolean add(String id) {
+    int number = number(id);
+    boolean added;
+    if (number < 0) {
+      added = named.add(id);
+    } else {
+      added = !numbered.get(number);
+      numbered.set(number);
+    }
+    if (added) size++;
+    return added;
+  }
+
+  boolean contains(String id) {
+    int number = number(id);
+    return number < 0 ? named.contains(id) : numbered.get(number);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** The id as a number, or -1 if it is not a plain decimal that fits a bit set index. */
+  private static int number(String id) {
+    if (id.isEmpty() || id.length() > 9) return -1;
+    int number = 0;
+    for (int i = 0; i < id.length(); i++) {
+      char c = id.charAt(i);
+      if (c < '0' || c > '9') return -1;
+      number = number * 10 + (c - '0');
+    }
+    // "007" and "7" are different ids
+    return id.length() > 1 && id.charAt(0) == '0' ? -1 : number;
+  }
+}
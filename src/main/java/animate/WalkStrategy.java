@@ -0,0 +1,130 @@
+package animate;
+
+import de.prob.statespace.State;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.Transition;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Picks the next transition of a {@link RandomWalk}. All randomness comes from the walk's seeded
+ * {@link Random}, so a walk is reproducible from its seed. A strategy keeps per-walk state and is
+ * not shared between walks.
+ */
+interface WalkStrategy {
+
+  enum Kind {
+    /** Every enabled transition is equally likely. */
+    uniform,
+    /** Events not yet covered in the state space first, then the least executed ones. */
+    coverage,
+    /** Transitions leading to states the walk has not visited yet first. */
+    novelty;
+
+    WalkStrategy create(StateSpace stateSpace) {
+      switch (this) {
+        case coverage:
+          return new LeastCovered(stateSpace);
+        case novelty:
+          return new Novelty();
+        default:
+          return new Uniform();
+      }
+    }
+  }
+
+  /** Chooses one of the non-empty {@code transitions} enabled in {@code state}. */
+  Transition choose(State state, List<Transition> transitions, Random random);
+
+  /** Called after {@code transition} has been executed. */
+  default void onStep(Transition transition) {}
+
+  private static Transition pick(List<Transition> candidates, Random random) {
+    return candidates.get(random.nextInt(candidates.size()));
+  }
+
+  final class Uniform implements WalkStrategy {
+    @Override
+    public Transition choose(State state, List<Transition> transitions, Random random) {
+      return pick(transitions, random);
+    }
+  }
+
+  /**
+   * Prefers events that ProB reports as uncovered, falling back to the events this walk has
+   * executed least often. The uncovered set is refreshed every {@link #REFRESH_STEPS} steps, since
+   * computing coverage walks the whole state space.
+   */
+  final class LeastCovered implements WalkStrategy {
+
+    private static final int REFRESH_STEPS = 50;
+
+    private final StateSpace stateSpace;
+    private final Map<String, Integer> executed = new HashMap<>();
+    private Set<String> uncovered;
+    private int stepsSinceRefresh;
+
+    LeastCovered(StateSpace stateSpace) {
+      this.stateSpace = stateSpace;
+    }
+
+    @Override
+    public Transition choose(State state, List<Transition> transitions, Random random) {
+      if (uncovered == null || stepsSinceRefresh >= REFRESH_STEPS) {
+        uncovered = new HashSet<>(Animate.computeCoverage(stateSpace).getUncovered());
+        stepsSinceRefresh = 0;
+      }
+
+      List<Transition> candidates = new ArrayList<>();
+      for (Transition t : transitions) {
+        if (uncovered.contains(t.getName())) {
+          candidates.add(t);
+        }
+      }
+      if (candidates.isEmpty()) {
+        int least = Integer.MAX_VALUE;
+        for (Transition t : transitions) {
+          int count = executed.getOrDefault(t.getName(), 0);
+          if (count < least) {
+            least = count;
+            candidates.clear();
+          }
+          if (count == least) {
+            candidates.add(t);
+          }
+        }
+      }
+      return pick(candidates, random);
+    }
+
+    @Override
+    public void onStep(Transition transition) {
+      executed.merge(transition.getName(), 1, Integer::sum);
+      uncovered.remove(transition.getName());
+      stepsSinceRefresh++;
+    }
+  }
+
+  /** Prefers transitions whose destination the walk has not visited, by state id. */
+  final class Novelty implements WalkStrategy {
+
+    private final VisitedStates visited = new VisitedStates();
+
+    @Override
+    public Transition choose(State state, List<Transition> transitions, Random random) {
+      visited.add(state.getId());
+      List<Transition> candidates = new ArrayList<>();
+      for (Transition t : transitions) {
+        if (!visited.contains(t.getDestination().getId())) {
+          candidates.add(t);
+        }
+      }
+      return pick(candidates.isEmpty() ? transitions : candidates, random);
+    }
+  }
+}
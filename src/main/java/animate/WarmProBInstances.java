@@ -0,0 +1,115 @@
+package animate;
+
+import com.google.inject.Provider;
+import de.prob.cli.ProBInstance;
+import de.prob.cli.ProBInstanceProvider;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands out probcli processes that were started ahead of time. ProB starts a probcli process only
+ * when a model is loaded; with this provider bound instead, {@code size} processes are spawned in
+ * the background as soon as the injector exists, overlapping with argument parsing and model
+ * resolution. Every instance taken is replaced by a new one, so that the models loaded one after
+ * another by {@code batch} or {@code serve} also get a started process.
+ *
+ * <p>A process is killed together with the {@link de.prob.statespace.StateSpace} it was handed
+ * to, as before; processes still waiting are shut down when the JVM exits. Processes that are still
+ * starting then are waited for briefly and shut down too, rather than interrupted half-spawned.
+ */
+final class WarmProBInstances implements Provider<ProBInstance> {
+
+  private static final ch.qos.logback.classic.Logger logger =
+      (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(WarmProBInstances.class);
+
+  // How long exiting waits for processes that are still starting
+  private static final long SHUTDOWN_WAIT_SECONDS = 5;
+
+  private final ProBInstanceProvider cold;
+  private final ExecutorService starter;
+  private final BlockingQueue<Future<ProBInstance>> warm = new LinkedBlockingQueue<>();
+  private volatile boolean closed;
+
+  WarmProBInstances(ProBInstanceProvider cold, int size) {
+    this.cold = cold;
+    this.starter =
+        Executors.newFixedThreadPool(
+            size,
+            r -> {
+              Thread thread = new Thread(r, "probcli-warmup");
+              thread.setDaemon(true);
+              return thread;
+            });
+    for (int i = 0; i < size; i++) {
+      startOne();
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "probcli-warmup-shutdown"));
+  }
+
+  @Override
+  public ProBInstance get() {
+    Future<ProBInstance> next = warm.poll();
+    if (next == null) {
+      return cold.get();
+    }
+    startOne();
+    try {
+      ProBInstance instance = next.get();
+      if (instance == null) {
+        return cold.get();
+      }
+      logger.debug("Using a pre-started probcli process");
+      return instance;
+    } catch (ExecutionException e) {
+      logger.warn("Pre-starting probcli failed, starting it now", e.getCause());
+      return cold.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for probcli", e);
+    }
+  }
+
+  private void startOne() {
+    if (closed) return;
+    try {
+      // A start still queued at shutdown spawns nothing
+      warm.add(starter.submit(() -> closed ? null : cold.get()));
+    } catch (RejectedExecutionException e) {
+      logger.debug("Not starting probcli, shutting down", e);
+    }
+  }
+
+  /**
+   * Shuts down the waiting processes. Starts that have not begun are dropped; the ones under way
+   * are not interrupted, since that could leave a spawned probcli behind, but waited for instead.
+   */
+  private void shutdown() {
+    closed = true;
+    starter.shutdown();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_WAIT_SECONDS);
+    for (Future<ProBInstance> future; (future = warm.poll()) != null; ) {
+      try {
+        ProBInstance instance =
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (instance != null) {
+          instance.shutdown();
+        }
+      } catch (ExecutionException e) {
+        // Nothing was started
+      } catch (TimeoutException e) {
+        logger.warn("A probcli process is still starting and may be left running");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+}
@@ -2,12 +2,17 @@ package animate;
 
 import static org.junit.Assert.*;
 
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -123,4 +128,520 @@ public class AnimateCliTest {
       throw e;
     }
   }
+
+  @Test(timeout = 60000)
+  public void testParallelWalks() throws Exception {
+    System.out.println("Testing parallel walks for: " + modelName);
+
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+
+    try {
+      System.setOut(new PrintStream(outContent));
+
+      String[] args = {
+        "--steps", "5", "--walks", "4", "--jobs", "2", "--seed", "42", modelFile.getAbsolutePath()
+      };
+
+      int exitCode = Animate.execute(args);
+
+      String output = outContent.toString();
+      assertTrue("Output should list every walk", output.contains("#3 (seed "));
+      assertEquals("Exit code should be 0", 0, exitCode);
+
+      System.setOut(originalOut);
+      System.out.println("  ✓ Parallel walks completed");
+    } catch (Exception e) {
+      System.setOut(originalOut);
+      System.err.println("  ✗ Parallel walks failed: " + e.getMessage());
+      throw e;
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testStrategiesAreReproducible() throws Exception {
+    System.out.println("Testing walk strategies for: " + modelName);
+
+    for (String strategy : new String[] {"coverage", "novelty"}) {
+      String[] args = {
+        "--steps", "10", "--seed", "7", "--strategy", strategy, modelFile.getAbsolutePath()
+      };
+      String first = animationSteps(args);
+      String second = animationSteps(args);
+      assertEquals("Same seed should give the same walk with " + strategy, first, second);
+    }
+    System.out.println("  ✓ Walk strategies are reproducible");
+  }
+
+  private static String animationSteps(String[] args) {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      assertEquals("Exit code should be 0", 0, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+    String output = outContent.toString();
+    int start = output.indexOf("Animation steps:");
+    int end = output.indexOf("Current state:");
+    return start < 0 || end < 0 ? output : output.substring(start, end);
+  }
+
+  @Test(timeout = 120000)
+  public void testUntilCoverageStopsAtBudget() throws Exception {
+    System.out.println("Testing coverage-guided walks for: " + modelName);
+
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    int exitCode;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--until-coverage",
+        "--jobs",
+        "2",
+        "--steps",
+        "10",
+        "--max-steps",
+        "200",
+        "--seed",
+        "3",
+        modelFile.getAbsolutePath()
+      };
+      exitCode = Animate.execute(args);
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String output = outContent.toString();
+    assertTrue("Output should report the target", output.contains("Coverage target"));
+    assertEquals(
+        "Exit code should match the report",
+        output.contains("Coverage target reached") ? 0 : 1,
+        exitCode);
+    System.out.println("  ✓ Coverage-guided walks completed");
+  }
+
+  @Test(timeout = 60000)
+  public void testNdjsonOutput() throws Exception {
+    System.out.println("Testing ndjson output for: " + modelName);
+
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--steps", "5", "--output", "ndjson", "--expand", modelFile.getAbsolutePath()
+      };
+      assertEquals("Exit code should be 0", 0, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String[] lines = outContent.toString().trim().split("\n");
+    for (String line : lines) {
+      assertTrue("Every line should be a JSON object: " + line, line.startsWith("{"));
+    }
+    assertTrue(
+        "Last line should be the summary", lines[lines.length - 1].contains("\"summary\""));
+    System.out.println("  ✓ ndjson output completed");
+  }
+
+  @Test(timeout = 60000)
+  public void testMetricsExport() throws Exception {
+    System.out.println("Testing metrics export for: " + modelName);
+
+    File metricsFile = File.createTempFile("animate-metrics-", ".prom");
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(new ByteArrayOutputStream()));
+      String[] args = {
+        "--steps", "5", "--metrics", metricsFile.getAbsolutePath(), modelFile.getAbsolutePath()
+      };
+      assertEquals("Exit code should be 0", 0, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String metrics = new String(Files.readAllBytes(metricsFile.toPath()));
+    assertTrue("Metrics should time loading", metrics.contains("{phase=\"load\""));
+    assertTrue("Metrics should time steps", metrics.contains("{phase=\"step\""));
+    metricsFile.delete();
+    System.out.println("  ✓ Metrics export completed");
+  }
+
+  @Test(timeout = 120000)
+  public void testSoakWritesSegments() throws Exception {
+    System.out.println("Testing soak run for: " + modelName);
+
+    Path dir = Files.createTempDirectory("animate-soak-");
+    Path save = dir.resolve("run.json");
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    int exitCode;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--soak",
+        "2s",
+        "--segment-steps",
+        "20",
+        "--seed",
+        "5",
+        "--save",
+        save.toString(),
+        modelFile.getAbsolutePath()
+      };
+      exitCode = Animate.execute(args);
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    assertEquals("Exit code should be 0", 0, exitCode);
+    assertTrue("Output should report progress", outContent.toString().contains("steps/s"));
+    assertTrue("First segment should be saved", Files.exists(dir.resolve("run-00001.json")));
+    assertFalse("No single trace should be saved", Files.exists(save));
+
+    PrintStream quietOut = System.out;
+    int replayExitCode;
+    try {
+      System.setOut(new PrintStream(new ByteArrayOutputStream()));
+      String[] replayArgs = {
+        "--jobs", "2", "replay", "-t", dir.toString(), modelFile.getAbsolutePath()
+      };
+      replayExitCode = Animate.execute(replayArgs);
+    } finally {
+      System.setOut(quietOut);
+    }
+    assertEquals("Every segment should replay on its own", 0, replayExitCode);
+    try (Stream<Path> files = Files.list(dir)) {
+      files.forEach(f -> f.toFile().delete());
+    }
+    dir.toFile().delete();
+    System.out.println("  ✓ Soak run completed");
+  }
+
+  @Test(timeout = 180000)
+  public void testReplayDirectoryInParallel() throws Exception {
+    System.out.println("Testing parallel replay for: " + modelName);
+
+    Path dir = Files.createTempDirectory("animate-replay-");
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    int exitCode;
+    try {
+      System.setOut(new PrintStream(new ByteArrayOutputStream()));
+      for (int seed = 1; seed <= 3; seed++) {
+        String[] args = {
+          "--steps",
+          "5",
+          "--seed",
+          Integer.toString(seed),
+          "--save",
+          dir.resolve("trace-" + seed + ".json").toString(),
+          modelFile.getAbsolutePath()
+        };
+        assertEquals("Recording should succeed", 0, Animate.execute(args));
+      }
+
+      System.setOut(new PrintStream(outContent));
+      String[] args = {"--jobs", "2", "replay", "-t", dir.toString(), modelFile.getAbsolutePath()};
+      exitCode = Animate.execute(args);
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String output = outContent.toString();
+    assertEquals("Exit code should be 0", 0, exitCode);
+    assertTrue("Every trace should be listed", output.contains("trace-3.json"));
+    assertTrue("All traces should replay", output.contains("Trace replay status: PERFECT 3"));
+    try (Stream<Path> files = Files.list(dir)) {
+      files.forEach(f -> f.toFile().delete());
+    }
+    dir.toFile().delete();
+    System.out.println("  ✓ Parallel replay completed");
+  }
+
+  @Test(timeout = 120000)
+  public void testCompactTraceRoundTrip() throws Exception {
+    System.out.println("Testing compact traces for: " + modelName);
+
+    Path dir = Files.createTempDirectory("animate-compact-");
+    Path compact = dir.resolve("trace.animtrace");
+    Path json = dir.resolve("trace.json");
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] save = {
+        "--steps", "20", "--seed", "7", "--save", compact.toString(), modelFile.getAbsolutePath()
+      };
+      assertEquals("Saving should succeed", 0, Animate.execute(save));
+      String[] convert = {"convert", "-i", compact.toString(), "-o", json.toString()};
+      assertEquals("Conversion should succeed", 0, Animate.execute(convert));
+      String[] replay = {"replay", "-t", compact.toString(), modelFile.getAbsolutePath()};
+      assertEquals("Replay should succeed", 0, Animate.execute(replay));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    assertTrue("Replay should be perfect", outContent.toString().contains("status: PERFECT"));
+    String converted = new String(Files.readAllBytes(json));
+    assertTrue("Converted trace should be JSON", converted.contains("\"transitionList\""));
+    try (Stream<Path> files = Files.list(dir)) {
+      files.forEach(f -> f.toFile().delete());
+    }
+    dir.toFile().delete();
+    System.out.println("  ✓ Compact trace round trip completed");
+  }
+
+  @Test(timeout = 120000)
+  public void testInfoCache() throws Exception {
+    System.out.println("Testing the info cache for: " + modelName);
+
+    Path dir = Files.createTempDirectory("animate-info-");
+    Path cacheRoot = Files.createTempDirectory("animate-info-cache-");
+    System.setProperty(ExtractionCache.CACHE_PROPERTY, cacheRoot.toString());
+    Path first = dir.resolve("first.eventb");
+    Path cached = dir.resolve("cached.eventb");
+    Path uncached = dir.resolve("uncached.eventb");
+    ByteArrayOutputStream cachedOut = new ByteArrayOutputStream();
+    ByteArrayOutputStream uncachedOut = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      String model = modelFile.getAbsolutePath();
+      String[] fill = {"info", "-b", first.toString(), model};
+      assertEquals("First run should succeed", 0, Animate.execute(fill));
+
+      // Debug logging shows which artefacts come from the cache
+      System.setOut(new PrintStream(cachedOut));
+      String[] hit = {"--debug", "info", "-b", cached.toString(), model};
+      assertEquals("Cached run should succeed", 0, Animate.execute(hit));
+
+      System.setOut(new PrintStream(uncachedOut));
+      String[] bypass = {"--debug", "info", "--no-cache", "-b", uncached.toString(), model};
+      assertEquals("Run without cache should succeed", 0, Animate.execute(bypass));
+    } finally {
+      System.setOut(originalOut);
+      System.clearProperty(ExtractionCache.CACHE_PROPERTY);
+      MoreFiles.deleteRecursively(cacheRoot, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    assertTrue(
+        "Second run should use the cache", cachedOut.toString().contains("Using cached model"));
+    assertFalse(
+        "--no-cache should not read the cache", uncachedOut.toString().contains("Using cached"));
+    String expected = Files.readString(first);
+    assertEquals("Cached model should match", expected, Files.readString(cached));
+    assertEquals("Uncached model should match", expected, Files.readString(uncached));
+    try (Stream<Path> files = Files.list(dir)) {
+      files.forEach(f -> f.toFile().delete());
+    }
+    dir.toFile().delete();
+    System.out.println("  ✓ Info cache hit and bypass completed");
+  }
+
+  @Test(timeout = 180000)
+  public void testBoundedCheck() throws Exception {
+    System.out.println("Testing bounded check for: " + modelName);
+
+    File counterexample = File.createTempFile("animate-check-", ".json");
+    counterexample.delete();
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    int exitCode;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--jobs",
+        "2",
+        "--save",
+        counterexample.getAbsolutePath(),
+        "check",
+        "--depth",
+        "4",
+        modelFile.getAbsolutePath()
+      };
+      exitCode = Animate.execute(args);
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String output = outContent.toString();
+    assertTrue("Output should report progress", output.contains("states/s"));
+    assertEquals(
+        "Exit code should match the result",
+        output.contains("No counterexample found") ? 0 : 1,
+        exitCode);
+    assertEquals(
+        "A counterexample should be saved exactly when one was found",
+        exitCode == 1,
+        counterexample.exists());
+    counterexample.delete();
+    System.out.println("  ✓ Bounded check completed");
+  }
+
+  @Test(timeout = 120000)
+  public void testStallRestartsReportDistinctStates() throws Exception {
+    System.out.println("Testing stall restarts for: " + modelName);
+
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--steps", "50", "--seed", "11", "--stall", "3", modelFile.getAbsolutePath()
+      };
+      assertEquals("Exit code should be 0", 0, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String output = outContent.toString();
+    assertTrue("Output should report distinct states", output.contains("Distinct states: "));
+    System.out.println("  ✓ Stall restarts completed");
+  }
+
+  @Test(timeout = 180000)
+  public void testAutotuneRecordsBestProfile() throws Exception {
+    System.out.println("Testing autotune for: " + modelName);
+
+    Path dir = Files.createTempDirectory("animate-autotune");
+    Path profiles = dir.resolve("profiles.json");
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--steps",
+        "10",
+        "--seed",
+        "3",
+        "--jobs",
+        "2",
+        "--profiles",
+        profiles.toString(),
+        "autotune",
+        "--candidates",
+        "default,fast-walk",
+        modelFile.getAbsolutePath()
+      };
+      assertEquals("Exit code should be 0", 0, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String output = outContent.toString();
+    assertTrue("Output should name the best profile", output.contains("Best profile: "));
+    String best = output.split("Best profile: ", 2)[1].lines().findFirst().orElse("").trim();
+    String saved = Files.readString(profiles);
+    assertTrue("Profile should be recorded for the model", saved.contains(modelFile.getName()));
+
+    outContent.reset();
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--steps", "5", "--profiles", profiles.toString(), "--pref", "CLPFD=false",
+        modelFile.getAbsolutePath()
+      };
+      assertEquals("Run with the recorded profile should succeed", 0, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+    assertTrue(
+        "The recorded profile should be picked up",
+        outContent.toString().contains("Using preference profile " + best));
+    System.out.println("  ✓ Autotune recorded a profile");
+  }
+
+  @Test(timeout = 180000)
+  public void testAllLevels() throws Exception {
+    System.out.println("Testing all refinement levels for: " + modelName);
+
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--steps", "20", "--seed", "5", "--invariants", "--all-levels", modelFile.getAbsolutePath()
+      };
+      assertEquals("Exit code should be 0", 0, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String output = outContent.toString();
+    String machine = modelFile.getName().replaceFirst("\\.bum$", "");
+    assertTrue("Output should have a summary table", output.contains("COVERED"));
+    assertTrue("Summary should list the selected machine", output.contains(machine + " "));
+    System.out.println("  ✓ All levels animated");
+  }
+
+  @Test(timeout = 180000)
+  public void testReplayOnAbstractions() throws Exception {
+    System.out.println("Testing replay on abstractions for: " + modelName);
+
+    Path dir = Files.createTempDirectory("animate-abstractions");
+    Path trace = dir.resolve("run.json");
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] save = {
+        "--steps", "10", "--seed", "2", "--save", trace.toString(), modelFile.getAbsolutePath()
+      };
+      assertEquals("Exit code should be 0", 0, Animate.execute(save));
+      outContent.reset();
+
+      String[] replay = {
+        "replay", "--abstractions", "-t", trace.toString(), modelFile.getAbsolutePath()
+      };
+      assertEquals("Replay should succeed on every level", 0, Animate.execute(replay));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String output = outContent.toString();
+    assertTrue("Output should list the levels", output.contains("refinement levels"));
+    String count = output.split("Replaying the trace on ", 2)[1].split(" ", 2)[0];
+    List<String> rows =
+        output
+            .lines()
+            .dropWhile(line -> !line.startsWith("MACHINE"))
+            .skip(1)
+            .takeWhile(line -> !line.isBlank())
+            .toList();
+    assertEquals("There should be a row per level", Integer.parseInt(count), rows.size());
+    String machine = modelFile.getName().replaceFirst("\\.bum$", "");
+    assertTrue("The concrete machine should come first", rows.get(0).startsWith(machine + " "));
+    for (String row : rows) {
+      assertTrue("Every level should replay perfectly: " + row, row.endsWith("PERFECT"));
+    }
+    System.out.println("  ✓ Replayed on abstractions");
+  }
+
+  @Test(timeout = 60000)
+  public void testEnablingStats() throws Exception {
+    System.out.println("Testing enabling statistics for: " + modelName);
+
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--steps", "20", "--seed", "9", "--enabling-stats", modelFile.getAbsolutePath()
+      };
+      assertEquals("Exit code should be 0", 0, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    String output = outContent.toString();
+    assertTrue("Output should report enabling", output.contains("Event enabling over "));
+    assertTrue(
+        "Output should count single-event states",
+        output.contains("States with a single enabled event: "));
+    System.out.println("  ✓ Enabling statistics reported");
+  }
 }
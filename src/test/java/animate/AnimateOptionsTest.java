@@ -0,0 +1,69 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import picocli.CommandLine;
+
+/** Test the validation of command line options, which needs no ProB. */
+public class AnimateOptionsTest {
+
+  private static final String MODEL = "src/test/resources/models/traffic-light/M2.bum";
+
+  /** The message validateInput rejects {@code args} with. */
+  private static String rejection(String... args) {
+    Animate animate = new Animate(null, null);
+    new CommandLine(animate).parseArgs(args);
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, animate::validateInput);
+    return e.getMessage();
+  }
+
+  @Test
+  public void testSoakRejectsEmptySegments() {
+    assertTrue(
+        "Zero segment steps should be rejected",
+        rejection("--soak", "1s", "--segment-steps", "0", MODEL)
+            .contains("segment steps must be positive"));
+    assertTrue(
+        "A zero report interval should be rejected",
+        rejection("--soak", "1s", "--report-interval", "0s", MODEL)
+            .contains("Report interval must be positive"));
+  }
+
+  @Test
+  public void testSoakRejectsEmptyDuration() {
+    assertTrue(rejection("--soak", "0s", MODEL).contains("Soak duration must be positive"));
+    assertTrue(rejection("--soak", "PT-1S", MODEL).contains("Soak duration must be positive"));
+  }
+
+  @Test
+  public void testValidSoakIsAccepted() {
+    Animate animate = new Animate(null, null);
+    new CommandLine(animate).parseArgs("--soak", "30m", MODEL);
+    animate.validateInput();
+  }
+
+  @Test
+  public void testCheckRejectsNegativeBounds() {
+    PrintStream originalErr = System.err;
+    ByteArrayOutputStream errContent = new ByteArrayOutputStream();
+    int[] exitCodes = new int[2];
+    try {
+      System.setErr(new PrintStream(errContent));
+      // Rejected before the model is loaded, so no ProB is needed
+      exitCodes[0] = new CommandLine(new Animate(null, null)).execute("check", "-d", "-1", MODEL);
+      exitCodes[1] =
+          new CommandLine(new Animate(null, null)).execute("check", "--max-states", "-5", MODEL);
+    } finally {
+      System.setErr(originalErr);
+    }
+
+    assertEquals("A negative depth should be rejected", 1, exitCodes[0]);
+    assertEquals("A negative state limit should be rejected", 1, exitCodes[1]);
+    assertTrue(errContent.toString().contains("Depth must not be negative"));
+    assertTrue(errContent.toString().contains("states must not be negative"));
+  }
+}
@@ -0,0 +1,64 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+/** Test animating every bundled model with the batch subcommand. */
+public class BatchCommandTest {
+
+  private static List<String> resultLines(String output, String prefix) {
+    return Arrays.stream(output.split("\n"))
+        .filter(line -> line.trim().startsWith(prefix))
+        .collect(Collectors.toList());
+  }
+
+  @Test(timeout = 120000)
+  public void testBatchJson() throws Exception {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+
+    try {
+      System.setOut(new PrintStream(outContent));
+      int exitCode =
+          Animate.execute(
+              new String[] {"--steps", "3", "--jobs", "2", "batch", "src/test/resources/models"});
+      System.setOut(originalOut);
+
+      List<String> lines = resultLines(outContent.toString(), "{");
+      assertEquals("Exit code should be 0", 0, exitCode);
+      assertEquals("One result line per project", 5, lines.size());
+      assertTrue(lines.stream().allMatch(line -> line.contains("\"status\":\"passed\"")));
+    } finally {
+      System.setOut(originalOut);
+    }
+  }
+
+  @Test(timeout = 120000)
+  public void testBatchJUnit() throws Exception {
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+
+    try {
+      System.setOut(new PrintStream(outContent));
+      int exitCode =
+          Animate.execute(
+              new String[] {
+                "--steps", "3", "batch", "--format", "junit", "src/test/resources/models"
+              });
+      System.setOut(originalOut);
+
+      String output = outContent.toString();
+      assertEquals("Exit code should be 0", 0, exitCode);
+      assertEquals("One test case per project", 5, resultLines(output, "<testcase").size());
+      assertTrue("Test suite should be closed", output.trim().endsWith("</testsuite>"));
+    } finally {
+      System.setOut(originalOut);
+    }
+  }
+}
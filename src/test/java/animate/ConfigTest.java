@@ -0,0 +1,48 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import com.google.inject.Binding;
+import com.google.inject.Guice;
+import com.google.inject.Key;
+import com.google.inject.spi.ProviderKeyBinding;
+import de.prob.cli.ProBInstance;
+import org.junit.Test;
+
+/** Test the Guice configuration and the ANIMATE_WARM_POOL setting. */
+public class ConfigTest {
+
+  @Test
+  public void testWarmPoolSize() {
+    assertEquals("Unset should start processes on demand", 0, Config.warmPoolSize(null));
+    assertEquals(0, Config.warmPoolSize(""));
+    assertEquals(0, Config.warmPoolSize("  "));
+    assertEquals(3, Config.warmPoolSize("3"));
+    assertEquals("Whitespace should be ignored", 2, Config.warmPoolSize(" 2 "));
+    assertEquals("Negative sizes should disable the pool", 0, Config.warmPoolSize("-1"));
+    assertEquals("Invalid numbers should be ignored", 0, Config.warmPoolSize("many"));
+  }
+
+  /** The provider ProB gets its probcli processes from, or {@code null} if not a provider key. */
+  private static Object probInstanceProvider(Config config) {
+    // Development stage, so no singleton and no probcli process is created
+    Binding<ProBInstance> binding = Guice.createInjector(config).getBinding(ProBInstance.class);
+    return binding instanceof ProviderKeyBinding<?> provided ? provided.getProviderKey() : null;
+  }
+
+  @Test
+  public void testWarmPoolOverridesProvider() {
+    assertEquals(
+        "A warm pool should provide the probcli processes",
+        Key.get(WarmProBInstances.class),
+        probInstanceProvider(new Config(2)));
+  }
+
+  @Test
+  public void testNoWarmPoolKeepsProBProvider() {
+    assertNotEquals(
+        "Without a pool ProB should start processes itself",
+        Key.get(WarmProBInstances.class),
+        probInstanceProvider(new Config(0)));
+  }
+}
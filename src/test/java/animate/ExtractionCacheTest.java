@@ -0,0 +1,84 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test the content-addressed cache of extracted zip archives. */
+public class ExtractionCacheTest {
+
+  private Path cacheRoot;
+  private Path workDir;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheRoot = Files.createTempDirectory("animate-cache-test-");
+    workDir = Files.createTempDirectory("animate-cache-zips-");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    MoreFiles.deleteRecursively(cacheRoot, RecursiveDeleteOption.ALLOW_INSECURE);
+    MoreFiles.deleteRecursively(workDir, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  private Path createZip(String name, String content) throws IOException {
+    Path zipFile = workDir.resolve(name);
+    try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFile))) {
+      zos.putNextEntry(new ZipEntry("model/M0.bum"));
+      zos.write(content.getBytes());
+      zos.closeEntry();
+    }
+    return zipFile;
+  }
+
+  @Test
+  public void testSameArchiveIsExtractedOnce() throws Exception {
+    ExtractionCache cache = new ExtractionCache(cacheRoot, Long.MAX_VALUE);
+    Path zipFile = createZip("a.zip", "<machine/>");
+
+    try (ExtractionCache.Lease first = cache.extract(zipFile)) {
+      Path bumFile = first.tree().resolve("model/M0.bum");
+      assertTrue("Archive should be extracted", Files.exists(bumFile));
+
+      // A copy under another name has the same content hash
+      Path copy = Files.copy(zipFile, workDir.resolve("copy.zip"));
+      try (ExtractionCache.Lease second = cache.extract(copy)) {
+        assertEquals("Identical archives should share an entry", first.tree(), second.tree());
+      }
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+    ExtractionCache cache = new ExtractionCache(cacheRoot, 15);
+    Path older;
+    try (ExtractionCache.Lease lease = cache.extract(createZip("a.zip", "<machine a/>"))) {
+      older = lease.tree();
+    }
+    try (ExtractionCache.Lease newer = cache.extract(createZip("b.zip", "<machine b/>"))) {
+      assertFalse("Older entry should be evicted once over the limit", Files.exists(older));
+      assertTrue("Entry in use should be kept", Files.exists(newer.tree()));
+    }
+  }
+
+  @Test
+  public void testLeasedEntryIsNotEvicted() throws Exception {
+    ExtractionCache cache = new ExtractionCache(cacheRoot, 15);
+    try (ExtractionCache.Lease older = cache.extract(createZip("a.zip", "<machine a/>"))) {
+      try (ExtractionCache.Lease newer = cache.extract(createZip("b.zip", "<machine b/>"))) {
+        assertTrue("Entry still in use should be kept", Files.exists(older.tree()));
+        assertTrue(Files.exists(newer.tree()));
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test the on-disk cache of the files produced by 'info'. */
+public class InfoCacheTest {
+
+  private Path cacheRoot;
+  private Path workDir;
+  private Path model;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheRoot = Files.createTempDirectory("animate-info-cache-test-");
+    workDir = Files.createTempDirectory("animate-info-work-");
+    // The hash of a .bum file covers its directory, so artefacts are written outside it
+    model = Files.createDirectory(workDir.resolve("model")).resolve("M0.bum");
+    Files.writeString(model, "<machine/>");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    MoreFiles.deleteRecursively(cacheRoot, RecursiveDeleteOption.ALLOW_INSECURE);
+    MoreFiles.deleteRecursively(workDir, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  private Path artefact(String content) throws IOException {
+    Path file = Files.createTempFile(workDir, "artefact-", ".dot");
+    Files.writeString(file, content);
+    return file;
+  }
+
+  @Test
+  public void testStoredArtefactIsHit() throws Exception {
+    InfoCache cache = new InfoCache(cacheRoot, Long.MAX_VALUE);
+    String key = InfoCache.key(model, "M0", Map.of(), "1.0");
+
+    assertNull("Nothing should be cached yet", cache.get(key, "machine.dot"));
+    cache.put(key, "machine.dot", artefact("digraph {}"));
+
+    Path cached = cache.get(InfoCache.key(model, "M0", Map.of(), "1.0"), "machine.dot");
+    assertNotNull("Stored artefact should be found", cached);
+    assertEquals("digraph {}", Files.readString(cached));
+    assertNull("Other artefacts should miss", cache.get(key, "events.dot"));
+  }
+
+  @Test
+  public void testKeyChangesWithInputs() throws Exception {
+    String key = InfoCache.key(model, "M0", Map.of(), "1.0");
+
+    assertNotEquals(key, InfoCache.key(model, "M1", Map.of(), "1.0"));
+    assertNotEquals(key, InfoCache.key(model, "M0", Map.of("MAX_OPERATIONS", "5"), "1.0"));
+    assertNotEquals(
+        "A different probcli should miss", key, InfoCache.key(model, "M0", Map.of(), "1.1"));
+
+    Files.writeString(model, "<machine name=\"edited\"/>");
+    String edited = InfoCache.key(model, "M0", Map.of(), "1.0");
+    assertNotEquals("An edited model should miss", key, edited);
+  }
+
+  @Test
+  public void testProbVersionIsRecorded() throws Exception {
+    InfoCache cache = new InfoCache(cacheRoot, Long.MAX_VALUE);
+    assertEquals("No version should be recorded yet", "", cache.probVersion());
+
+    cache.recordProbVersion("1.13.0");
+    assertEquals("1.13.0", new InfoCache(cacheRoot, Long.MAX_VALUE).probVersion());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+    InfoCache cache = new InfoCache(cacheRoot, 150);
+    String first = InfoCache.key(model, "M0", Map.of(), "1.0");
+    String second = InfoCache.key(model, "M1", Map.of(), "1.0");
+    String third = InfoCache.key(model, "M2", Map.of(), "1.0");
+
+    cache.put(first, "machine.dot", artefact("a".repeat(60)));
+    cache.put(second, "machine.dot", artefact("b".repeat(60)));
+    // Using the first entry leaves the second as the least recently used
+    Files.setLastModifiedTime(cacheRoot.resolve(second), FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(cacheRoot.resolve(first), FileTime.fromMillis(2000));
+    cache.put(third, "machine.dot", artefact("c".repeat(60)));
+
+    assertNotNull("Recently used entry should stay", cache.get(first, "machine.dot"));
+    assertNull("Least recently used entry should be evicted", cache.get(second, "machine.dot"));
+    assertNotNull("New entry should stay", cache.get(third, "machine.dot"));
+  }
+}
@@ -163,4 +163,36 @@ public class ModelAnimationTest {
       stateSpace.kill();
     }
   }
+
+  @Test
+  public void testIncrementalInvariantsAgreeWithProB() throws Exception {
+    System.out.println("Testing incremental invariant checking for: " + modelName);
+
+    StateSpace stateSpace = api.eventb_load(modelFile.getAbsolutePath());
+
+    try {
+      List<RandomWalk> walks = new ArrayList<>();
+      for (InvariantChecker.Mode mode : InvariantChecker.Mode.values()) {
+        RandomWalk walk = new RandomWalk(stateSpace, 11, mode, new WalkStrategy.Uniform());
+        walk.run(new Trace(stateSpace), 20, transition -> {});
+        walks.add(walk);
+      }
+
+      RandomWalk prob = walks.get(0);
+      RandomWalk incremental = walks.get(1);
+      assertEquals(
+          "Both modes should stop after the same step",
+          prob.getStepsTaken(),
+          incremental.getStepsTaken());
+      assertEquals(
+          "Both modes should find the same violated invariants",
+          prob.getViolatedInvariants(),
+          incremental.getViolatedInvariants());
+      assertEquals(prob.isInvariantViolated(), incremental.isInvariantViolated());
+
+      System.out.println("  ✓ Incremental invariant checking agrees with ProB");
+    } finally {
+      stateSpace.kill();
+    }
+  }
 }
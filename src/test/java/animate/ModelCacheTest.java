@@ -0,0 +1,70 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+/** Test how serve hands out and reloads cached models. */
+public class ModelCacheTest {
+
+  @Test
+  public void testEntryIsTakenOnce() throws Exception {
+    try (ModelCache cache = new ModelCache(2)) {
+      assertNull(cache.take("m"));
+      cache.reload("m", "M1", () -> null);
+
+      ModelCache.Entry entry = cache.take("m");
+      assertNotNull(entry);
+      assertEquals("M1", entry.machineName());
+      assertNull("A taken model is not handed out twice", cache.take("m"));
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testTakeWaitsForReload() throws Exception {
+    CountDownLatch loading = new CountDownLatch(1);
+    try (ModelCache cache = new ModelCache(2)) {
+      cache.reload(
+          "m",
+          "M1",
+          () -> {
+            try {
+              loading.await();
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            return null;
+          });
+      new Thread(loading::countDown).start();
+      assertEquals("M1", cache.take("m").machineName());
+    }
+  }
+
+  @Test
+  public void testFailedReloadIsAMiss() throws Exception {
+    try (ModelCache cache = new ModelCache(2)) {
+      cache.reload(
+          "m",
+          "M1",
+          () -> {
+            throw new IOException("model changed");
+          });
+      assertNull(cache.take("m"));
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() throws Exception {
+    try (ModelCache cache = new ModelCache(2)) {
+      cache.reload("a", "A", () -> null);
+      cache.reload("b", "B", () -> null);
+      cache.reload("c", "C", () -> null);
+
+      assertEquals(2, cache.size());
+      assertNull(cache.take("a"));
+      assertEquals("C", cache.take("c").machineName());
+    }
+  }
+}
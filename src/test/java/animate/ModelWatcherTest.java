@@ -0,0 +1,62 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test the debounced watching of model files. */
+public class ModelWatcherTest {
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("animate-watch-test-").toRealPath();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @Test(timeout = 30000)
+  public void testChangesAreReportedTogether() throws Exception {
+    Path bum = Files.writeString(dir.resolve("M0.bum"), "<machine/>");
+    Path bcm = Files.writeString(dir.resolve("M0.bcm"), "<machine/>");
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (ModelWatcher watcher = new ModelWatcher(dir, false)) {
+      Future<Set<Path>> changed =
+          executor.submit(() -> watcher.awaitChange(ModelWatcher::isModelFile));
+      Files.writeString(dir.resolve("notes.txt"), "ignored");
+      Files.writeString(bum, "<machine name=\"M0\"/>");
+      Files.writeString(bcm, "<machine name=\"M0\"/>");
+
+      assertEquals(Set.of(bum, bcm), changed.get(20, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testOnlyFilesOfTheMachineAreRelevant() throws Exception {
+    Path model = Path.of("src/test/resources/models/cars-on-bridge/M1.bum");
+    var relevant = ModelWatcher.filesOf(model, model);
+
+    assertTrue(relevant.test(model.resolveSibling("M0.bcm")));
+    assertTrue(relevant.test(model.resolveSibling("C0.buc")));
+    assertFalse(relevant.test(model.resolveSibling("M2.bum")));
+    assertFalse(relevant.test(model.resolveSibling("M1.bpo")));
+  }
+}
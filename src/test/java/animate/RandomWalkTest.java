@@ -0,0 +1,111 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Stage;
+import de.prob.scripting.Api;
+import de.prob.statespace.StateSpace;
+import de.prob.statespace.State;
+import de.prob.statespace.Trace;
+import de.prob.statespace.Transition;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Test single random walks on the traffic-light model. */
+public class RandomWalkTest {
+
+  private static final String MODEL = "src/test/resources/models/traffic-light/M2.bum";
+
+  private static Api api;
+  private StateSpace stateSpace;
+
+  @BeforeClass
+  public static void setupApi() {
+    Injector injector = Guice.createInjector(Stage.PRODUCTION, new Config());
+    api = injector.getInstance(Api.class);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    stateSpace = api.eventb_load(new File(MODEL).getAbsolutePath());
+  }
+
+  @After
+  public void tearDown() {
+    stateSpace.kill();
+  }
+
+  @Test
+  public void testStallRestartsFromInitialState() {
+    int steps = 50;
+    RandomWalk walk = new RandomWalk(stateSpace, 11, null, new WalkStrategy.Uniform());
+    walk.setStallSteps(1);
+    walk.run(new Trace(stateSpace), steps, transition -> {});
+
+    assertFalse("Traffic light should not deadlock", walk.isDeadlocked());
+    assertEquals("Restarts should not cost steps", steps, walk.getStepsTaken());
+    assertTrue("A small model should stall within 50 steps", walk.getRestarts() > 0);
+    assertTrue("Each step finds at most one new state", walk.getDistinctStates() <= steps + 1);
+    // With --stall 1, every step either reaches a new state or restarts
+    assertEquals(steps + 1, walk.getDistinctStates() + walk.getRestarts());
+  }
+
+  @Test
+  public void testNoRestartsWithoutStall() {
+    RandomWalk walk = new RandomWalk(stateSpace, 11, null, new WalkStrategy.Uniform());
+    walk.run(new Trace(stateSpace), 50, transition -> {});
+
+    assertEquals(50, walk.getStepsTaken());
+    assertEquals(0, walk.getRestarts());
+    assertTrue(walk.getDistinctStates() <= 51);
+  }
+
+  @Test
+  public void testEnablingStatsMatchTheWalkedStates() {
+    RandomWalk walk = new RandomWalk(stateSpace, 5, null, new WalkStrategy.Uniform());
+    EnablingStats stats = new EnablingStats();
+    walk.setEnablingStats(stats);
+    Trace trace = walk.run(new Trace(stateSpace), 40, transition -> {});
+
+    // Count the enabled events again from the states the walk took a step in
+    Map<String, Integer> expected = new HashMap<>();
+    int states = 0;
+    int singleEnabled = 0;
+    for (Transition step : trace.getTransitionList()) {
+      State source = step.getSource();
+      Set<String> events = new TreeSet<>();
+      for (Transition transition : source.getOutTransitions()) {
+        events.add(transition.getName());
+      }
+      if (events.iterator().next().startsWith("$")) continue;
+      states++;
+      if (events.size() == 1) singleEnabled++;
+      events.forEach(event -> expected.merge(event, 1, Integer::sum));
+    }
+
+    assertEquals(states, stats.getStates());
+    assertEquals(singleEnabled, stats.getNearDeadlocks());
+    List<String> events = EnablingStats.eventNames(stateSpace);
+    assertEquals(
+        List.of("push_button", "set_peds_green", "set_peds_red", "set_cars_colours"), events);
+    List<String> never = new ArrayList<>();
+    for (String event : events) {
+      int times = expected.getOrDefault(event, 0);
+      assertEquals("Times " + event + " was enabled", times, stats.timesEnabled(event));
+      if (times == 0) never.add(event);
+    }
+    assertEquals(never, stats.neverEnabled(events));
+    assertEquals(List.of("no_such_event"), stats.neverEnabled(List.of("no_such_event")));
+  }
+}
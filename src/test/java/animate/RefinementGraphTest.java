@@ -0,0 +1,72 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+/** Test the streaming scan of the refinement graph. */
+public class RefinementGraphTest {
+
+  private static final Path CARS_ON_BRIDGE = Paths.get("src/test/resources/models/cars-on-bridge");
+
+  @Test
+  public void testCarsOnBridgeGraph() throws Exception {
+    RefinementGraph graph = RefinementGraph.scanDirectory(CARS_ON_BRIDGE);
+
+    assertEquals(Set.of("M0", "M1", "M2", "M3"), graph.machineNames());
+    assertEquals("M3", graph.mostRefined("test"));
+    assertEquals(List.of("M3", "M2", "M1", "M0"), graph.chain("M3"));
+    assertEquals(Set.of("C3", "C2", "C0"), graph.seenContexts("M3"));
+    assertEquals(Set.of("C0"), graph.seenContexts("M1"));
+    assertTrue(graph.describe().contains("M2 refines M1 sees C2"));
+    assertTrue(graph.describe().contains("C3 extends C2"));
+  }
+
+  @Test
+  public void testEventRefinement() throws Exception {
+    RefinementGraph graph =
+        RefinementGraph.scanDirectory(Paths.get("src/test/resources/models/binary-search"));
+
+    assertEquals(List.of("search"), graph.event("M2", "search_inc").refines());
+    assertTrue(graph.event("M1", "search").refines().isEmpty());
+    assertTrue(graph.event("M2", "found").extended());
+    assertEquals(List.of("r", "k", "i", "j"), graph.machine("M2").variables());
+    assertTrue(graph.constantsOf("M0").contains("n"));
+  }
+
+  @Test
+  public void testNestedElementsAreIgnored() throws Exception {
+    String bum =
+        "<org.eventb.core.machineFile>"
+            + "<org.eventb.core.event name=\"e\">"
+            + "<org.eventb.core.refinesMachine org.eventb.core.target=\"Nested\"/>"
+            + "</org.eventb.core.event>"
+            + "<org.eventb.core.refinesMachine org.eventb.core.target=\"M0\"/>"
+            + "</org.eventb.core.machineFile>";
+    RefinementGraph.Machine machine =
+        RefinementGraph.readMachine(
+            new ByteArrayInputStream(bum.getBytes(StandardCharsets.UTF_8)), "M1", "test", false);
+
+    assertEquals("M0", machine.refines());
+    assertTrue(machine.sees().isEmpty());
+  }
+
+  @Test
+  public void testMultipleLeavesAreRejected() {
+    RefinementGraph graph =
+        RefinementGraph.of(
+            List.of(
+                new RefinementGraph.Machine("A", null, List.of()),
+                new RefinementGraph.Machine("B", null, List.of())),
+            List.of());
+    IOException e = assertThrows(IOException.class, () -> graph.mostRefined("test"));
+    assertTrue(e.getMessage().contains("Leaf machines: A, B"));
+  }
+}
@@ -0,0 +1,75 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test how replay arguments are expanded to trace files. */
+public class ReplayCommandTest {
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("animate-replay-test-");
+    Files.createDirectories(dir.resolve("traces/nested"));
+    Files.writeString(dir.resolve("traces/a.json"), "{}");
+    Files.writeString(dir.resolve("traces/nested/b.animtrace"), "");
+    Files.writeString(dir.resolve("traces/notes.txt"), "");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @Test
+  public void testRelativeArgumentsUseTheWorkingDirectory() throws Exception {
+    assertEquals(
+        List.of(dir.resolve("traces/a.json")),
+        ReplayCommand.findTraces(dir, List.of("traces/a.json")));
+    assertEquals(
+        List.of(dir.resolve("traces/a.json"), dir.resolve("traces/nested/b.animtrace")),
+        ReplayCommand.findTraces(dir, List.of("traces")));
+  }
+
+  @Test
+  public void testGlobIsMatchedUnderTheWorkingDirectory() throws Exception {
+    assertEquals(
+        List.of(dir.resolve("traces/nested/b.animtrace")),
+        ReplayCommand.findTraces(dir, List.of("traces/**/*.animtrace")));
+    assertEquals(
+        List.of(dir.resolve("traces/a.json")),
+        ReplayCommand.findTraces(dir, List.of("*/*.json")));
+  }
+
+  @Test
+  public void testDoubleStarMatchesTopLevelFiles() throws Exception {
+    assertEquals(
+        List.of(dir.resolve("traces/a.json")),
+        ReplayCommand.findTraces(dir, List.of("traces/**/*.json")));
+    assertEquals(
+        List.of(dir.resolve("traces/a.json"), dir.resolve("traces/nested/b.animtrace")),
+        ReplayCommand.findTraces(dir, List.of("traces/**/*.{json,animtrace}")));
+  }
+
+  @Test
+  public void testFileMatchedTwiceIsReplayedOnce() throws Exception {
+    assertEquals(
+        List.of(dir.resolve("traces/a.json")),
+        ReplayCommand.findTraces(dir, List.of("traces/a.json", "*/*.json", "./traces/a.json")));
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingTraceIsReported() throws Exception {
+    ReplayCommand.findTraces(dir, List.of("missing.json"));
+  }
+}
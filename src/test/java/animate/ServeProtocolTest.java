@@ -0,0 +1,119 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import org.junit.Test;
+
+/** Test the wire format between --connect and serve. */
+public class ServeProtocolTest {
+
+  @Test
+  public void testRequestRoundTrip() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    List<String> args = List.of("--steps", "20", "replay", "-t", "tracés/*.json", "M1.bum");
+    ServeProtocol.writeRequest(new DataOutputStream(bytes), "c0ffee", "/home/user/project", args);
+
+    ServeProtocol.Request request = ServeProtocol.readRequest(input(bytes));
+    assertEquals("c0ffee", request.token());
+    assertEquals(Paths.get("/home/user/project"), request.workingDir());
+    assertEquals(args, request.args());
+  }
+
+  @Test
+  public void testTokenFileIsPrivate() throws Exception {
+    Path dir = Files.createTempDirectory("animate-serve-");
+    try {
+      Path file = dir.resolve("run/serve-8642.token");
+      String token = ServeProtocol.createToken(file);
+
+      assertEquals("64 hex digits", 64, token.length());
+      assertEquals(token, ServeProtocol.readToken(file));
+      assertEquals(
+          "Only the owner should read the token",
+          PosixFilePermissions.fromString("rw-------"),
+          Files.getPosixFilePermissions(file));
+      assertTrue(ServeProtocol.tokenMatches(token, ServeProtocol.readToken(file)));
+      assertFalse(
+          "A new server should get a new token",
+          ServeProtocol.tokenMatches(token, ServeProtocol.createToken(file)));
+      assertFalse(ServeProtocol.tokenMatches(token, ""));
+    } finally {
+      MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testMalformedRequestIsRejected() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new DataOutputStream(bytes).writeInt(-1);
+    ServeProtocol.readRequest(input(bytes));
+  }
+
+  @Test
+  public void testResponseFrames() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try (PrintStream stdout =
+            new PrintStream(
+                new ServeProtocol.FrameOutputStream(out, ServeProtocol.STDOUT),
+                true,
+                StandardCharsets.UTF_8);
+        PrintStream stderr =
+            new PrintStream(
+                new ServeProtocol.FrameOutputStream(out, ServeProtocol.STDERR),
+                true,
+                StandardCharsets.UTF_8)) {
+      stdout.println("Machine: M1");
+      stderr.println("Error: deadlock");
+    }
+    ServeProtocol.writeExit(out, 3);
+
+    DataInputStream in = input(bytes);
+    assertEquals(ServeProtocol.STDOUT, in.readUnsignedByte());
+    assertEquals("Machine: M1\n", payload(in));
+    assertEquals(ServeProtocol.STDERR, in.readUnsignedByte());
+    assertEquals("Error: deadlock\n", payload(in));
+    assertEquals(ServeProtocol.EXIT, in.readUnsignedByte());
+    assertEquals(3, in.readInt());
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void testConnectPort() {
+    assertNull(ServeClient.connectPort(new String[] {"--steps", "5", "M1.bum"}));
+    assertEquals(
+        Integer.valueOf(8642),
+        ServeClient.connectPort(new String[] {"--connect", "8642", "--steps", "5"}));
+    assertEquals(
+        Integer.valueOf(9000), ServeClient.connectPort(new String[] {"--connect=9000", "M1.bum"}));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidConnectPort() {
+    ServeClient.connectPort(new String[] {"--connect", "http", "M1.bum"});
+  }
+
+  private static DataInputStream input(ByteArrayOutputStream bytes) {
+    return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+  }
+
+  private static String payload(DataInputStream in) throws IOException {
+    byte[] payload = new byte[in.readInt()];
+    in.readFully(payload);
+    return new String(payload, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,121 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test the delta debugging of traces that end in an invariant violation. */
+public class TraceMinimiserTest {
+
+  private static final Path TRAFFIC_LIGHT = Paths.get("src/test/resources/models/traffic-light");
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("animate-minimise-");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    MoreFiles.deleteRecursively(dir, RecursiveDeleteOption.ALLOW_INSECURE);
+  }
+
+  @Test
+  public void testSplitIntoEvenChunks() {
+    List<List<Integer>> chunks = TraceMinimiser.split(List.of(0, 1, 2, 3, 4, 5, 6), 3);
+
+    assertEquals(List.of(List.of(0, 1), List.of(2, 3), List.of(4, 5, 6)), chunks);
+    assertEquals(
+        "Every step should be its own chunk",
+        List.of(List.of(7), List.of(8)),
+        TraceMinimiser.split(List.of(7, 8), 2));
+  }
+
+  @Test
+  public void testComplementKeepsOrder() {
+    List<List<Integer>> chunks = List.of(List.of(0, 1), List.of(2, 3), List.of(4, 5, 6));
+
+    assertEquals(List.of(2, 3, 4, 5, 6), TraceMinimiser.complement(chunks, 0));
+    assertEquals(List.of(0, 1, 4, 5, 6), TraceMinimiser.complement(chunks, 1));
+    assertEquals(List.of(0, 1, 2, 3), TraceMinimiser.complement(chunks, 2));
+  }
+
+  @Test
+  public void testMinimisedFile() {
+    assertEquals(
+        Paths.get("dir/run.min.json"), TraceMinimiser.minimisedFile(Paths.get("dir/run.json")));
+    assertEquals(
+        Paths.get("run.min.animtrace"), TraceMinimiser.minimisedFile(Paths.get("run.animtrace")));
+    assertEquals(Paths.get("dir/run.min.json"), TraceMinimiser.minimisedFile(Paths.get("dir/run")));
+  }
+
+  /**
+   * The traffic light without the guard that keeps pedestrians from crossing while cars go: a walk
+   * violates inv3 once set_cars lets cars go and set_peds_go follows.
+   */
+  private Path faultyTrafficLight() throws IOException {
+    String guard = "org.eventb.core.label=\"grd1\" org.eventb.core.predicate=\"cars_go";
+    for (String file : List.of("M0.bum", "M0.bcm")) {
+      List<String> lines = Files.readAllLines(TRAFFIC_LIGHT.resolve(file));
+      List<String> kept = lines.stream().filter(line -> !line.contains(guard)).toList();
+      assertEquals("Only the guard should be removed", lines.size() - 1, kept.size());
+      Files.write(dir.resolve(file), kept);
+    }
+    return dir.resolve("M0.bum");
+  }
+
+  @Test(timeout = 120000)
+  public void testMinimiseKeepsOnlyTheViolatingSteps() throws Exception {
+    Path model = faultyTrafficLight();
+    Path trace = dir.resolve("run.json");
+
+    ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+    PrintStream originalOut = System.out;
+    try {
+      System.setOut(new PrintStream(outContent));
+      String[] args = {
+        "--steps", "200", "--seed", "3", "--invariants", "--save", trace.toString(), "--minimise",
+        model.toString()
+      };
+      assertEquals("The walk should violate an invariant", 1, Animate.execute(args));
+    } finally {
+      System.setOut(originalOut);
+    }
+
+    ObjectMapper mapper = new ObjectMapper();
+    List<String> original = steps(mapper.readTree(trace.toFile()));
+    List<String> minimised = steps(mapper.readTree(TraceMinimiser.minimisedFile(trace).toFile()));
+    assertTrue("The walk should take more than the violating steps", original.size() > 2);
+    assertEquals(
+        "Only letting cars go and then pedestrians should remain",
+        List.of("set_cars", "set_peds_go"),
+        minimised);
+  }
+
+  /** Event names of a saved trace, without the steps that set up and initialise the machine. */
+  private static List<String> steps(JsonNode trace) {
+    List<String> names = new ArrayList<>();
+    for (JsonNode transition : trace.path("transitionList")) {
+      String name = transition.path("name").asText();
+      if (!name.startsWith("$")) {
+        names.add(name);
+      }
+    }
+    return names;
+  }
+}
@@ -0,0 +1,43 @@
+package animate;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/** Test the set of visited ProB state ids. */
+public class VisitedStatesTest {
+
+  @Test
+  public void testAddReportsNewIds() {
+    VisitedStates visited = new VisitedStates();
+    assertTrue("First id should be new", visited.add("root"));
+    assertTrue(visited.add("0"));
+    assertTrue(visited.add("42"));
+    assertFalse("Repeated named id should not be new", visited.add("root"));
+    assertFalse("Repeated numbered id should not be new", visited.add("42"));
+    assertEquals(3, visited.size());
+  }
+
+  @Test
+  public void testContains() {
+    VisitedStates visited = new VisitedStates();
+    visited.add("7");
+    visited.add("root");
+    assertTrue(visited.contains("7"));
+    assertTrue(visited.contains("root"));
+    assertFalse(visited.contains("8"));
+    assertFalse(visited.contains("root2"));
+  }
+
+  @Test
+  public void testIdsThatAreNotPlainNumbersStayDistinct() {
+    VisitedStates visited = new VisitedStates();
+    visited.add("7");
+    assertTrue("Leading zero should be a different id", visited.add("007"));
+    assertTrue("Too long for an index should be kept by name", visited.add("12345678901"));
+    assertTrue(visited.add("-1"));
+    assertTrue(visited.add(""));
+    assertFalse(visited.contains("1234567890"));
+    assertEquals(5, visited.size());
+  }
+}
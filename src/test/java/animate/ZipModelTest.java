@@ -5,6 +5,9 @@ import static org.junit.Assert.*;
 import java.io.*;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.junit.Test;
@@ -12,37 +15,44 @@ import org.junit.Test;
 /** Test that the CLI can load Event-B models from .zip archives. */
 public class ZipModelTest {
 
-  private static Path createTestZip(Path sourceDir) throws IOException {
+  /** Zips each of {@code sourceDirs} into a directory of the same name in one archive. */
+  private static Path createTestZip(Path... sourceDirs) throws IOException {
     Path zipFile = Files.createTempFile("animate-test-", ".zip");
     try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFile))) {
-      Files.walkFileTree(
-          sourceDir,
-          new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
-                throws IOException {
-              String entryName = sourceDir.getParent().relativize(file).toString();
-              zos.putNextEntry(new ZipEntry(entryName));
-              Files.copy(file, zos);
-              zos.closeEntry();
-              return FileVisitResult.CONTINUE;
-            }
-
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
-                throws IOException {
-              String entryName = sourceDir.getParent().relativize(dir).toString();
-              if (!entryName.isEmpty()) {
-                zos.putNextEntry(new ZipEntry(entryName + "/"));
-                zos.closeEntry();
-              }
-              return FileVisitResult.CONTINUE;
-            }
-          });
+      for (Path sourceDir : sourceDirs) {
+        addToZip(zos, sourceDir);
+      }
     }
     return zipFile;
   }
 
+  private static void addToZip(ZipOutputStream zos, Path sourceDir) throws IOException {
+    Files.walkFileTree(
+        sourceDir,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            String entryName = sourceDir.getParent().relativize(file).toString();
+            zos.putNextEntry(new ZipEntry(entryName));
+            Files.copy(file, zos);
+            zos.closeEntry();
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            String entryName = sourceDir.getParent().relativize(dir).toString();
+            if (!entryName.isEmpty()) {
+              zos.putNextEntry(new ZipEntry(entryName + "/"));
+              zos.closeEntry();
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
   @Test(timeout = 30000)
   public void testAnimateFromZip() throws Exception {
     Path sourceDir = Paths.get("src/test/resources/models/base-model");
@@ -105,4 +115,75 @@ public class ZipModelTest {
       Files.deleteIfExists(zipFile);
     }
   }
+
+  @Test(timeout = 30000)
+  public void testLazyUnzipExtractsOnlyNeededFiles() throws Exception {
+    Path zipFile = createTestZip(Paths.get("src/test/resources/models/cars-on-bridge"));
+    ModelResolver resolver = new ModelResolver();
+    resolver.lazyUnzip = true;
+
+    try {
+      Path bumFile = resolver.resolve(zipFile);
+      assertEquals("M3.bum", bumFile.getFileName().toString());
+
+      List<String> extracted;
+      try (Stream<Path> files = Files.list(bumFile.getParent())) {
+        extracted = files.map(p -> p.getFileName().toString()).collect(Collectors.toList());
+      }
+      assertTrue("Refinement chain should be extracted", extracted.contains("M0.bcm"));
+      assertTrue("Seen contexts should be extracted", extracted.contains("C3.bcc"));
+      assertTrue(
+          "Proof files should be skipped",
+          extracted.stream().noneMatch(f -> f.endsWith(".bpo") || f.endsWith(".bpr")));
+    } finally {
+      resolver.cleanupTempDir();
+      Files.deleteIfExists(zipFile);
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testAnimateFromZipLazily() throws Exception {
+    Path zipFile = createTestZip(Paths.get("src/test/resources/models/binary-search"));
+
+    try {
+      int exitCode =
+          Animate.execute(new String[] {"--steps", "3", "--lazy-unzip", zipFile.toString()});
+      assertEquals("Exit code should be 0", 0, exitCode);
+    } finally {
+      Files.deleteIfExists(zipFile);
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testLazyUnzipSelectsSameMachineAsFullUnzip() throws Exception {
+    // Both projects have an M1.bum, seeing different contexts
+    Path zipFile =
+        createTestZip(
+            Paths.get("src/test/resources/models/base-model"),
+            Paths.get("src/test/resources/models/cars-on-bridge"));
+    ModelResolver full = new ModelResolver();
+    ModelResolver lazy = new ModelResolver();
+    lazy.lazyUnzip = true;
+
+    try {
+      Path expected = full.resolve(zipFile, "M1");
+      Path selected = lazy.resolve(zipFile, "M1");
+      String project = expected.getParent().getFileName().toString();
+      assertEquals(
+          "Lazy extraction should pick the same M1.bum",
+          project,
+          selected.getParent().getFileName().toString());
+
+      List<String> extracted;
+      try (Stream<Path> files = Files.list(selected.getParent())) {
+        extracted = files.map(p -> p.getFileName().toString()).collect(Collectors.toList());
+      }
+      String context = project.equals("base-model") ? "C1.bcc" : "C0.bcc";
+      assertTrue("Contexts of the selected M1 should be extracted", extracted.contains(context));
+    } finally {
+      full.cleanupTempDir();
+      lazy.cleanupTempDir();
+      Files.deleteIfExists(zipFile);
+    }
+  }
 }